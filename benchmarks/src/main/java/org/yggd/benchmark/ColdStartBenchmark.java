@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.yggd.server.EmbeddedServer;
+import org.yggd.server.ServerBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from {@code ServerBuilder.with*()} until {@code start()} returns. Every fork is a fresh JVM,
+ * so the first measured start includes class loading.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(3)
+public class ColdStartBenchmark {
+
+    @Param({"ftp", "sftp", "tcp"})
+    private String protocol;
+
+    private Path directory;
+    private Path hostKey;
+    private Path publicKey;
+    private EmbeddedServer server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("coldStartBenchmark");
+        hostKey = BenchmarkFiles.copyResource("/security/hostkey.ser", ".ser");
+        publicKey = BenchmarkFiles.copyResource("/security/id_rsa.pub", ".pub");
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFiles.deleteRecursively(directory);
+        Files.deleteIfExists(hostKey);
+        Files.deleteIfExists(publicKey);
+    }
+
+    @Benchmark
+    public EmbeddedServer start() {
+        server = build();
+        server.start();
+        return server;
+    }
+
+    private EmbeddedServer build() {
+        switch (protocol) {
+            case "ftp":
+                return ServerBuilder.withFtp()
+                        .port(0)
+                        .user(u -> {
+                            u.setName("user1");
+                            u.setPassword("password");
+                            u.setHomeDirectory(directory.toString());
+                        })
+                        .build();
+            case "sftp":
+                return ServerBuilder.withSftp()
+                        .port(0)
+                        .directory(directory)
+                        .keyPairProvider(hostKey)
+                        .publicKeyAuthenticate(publicKey,
+                                (username, clientkey, session, serverkey) -> serverkey.equals(clientkey))
+                        .build();
+            case "tcp":
+                return ServerBuilder.withTcp()
+                        .port(0)
+                        .active(() -> new byte[0])
+                        .read(b -> {})
+                        .build();
+            default:
+                throw new IllegalArgumentException("unknown protocol: " + protocol);
+        }
+    }
+}
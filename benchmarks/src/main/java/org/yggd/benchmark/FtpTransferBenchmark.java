@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.benchmark;
+
+import org.apache.commons.net.util.TrustManagerUtils;
+import org.openjdk.jmh.annotations.*;
+import org.yggd.client.ftp.FtpClientBuilder;
+import org.yggd.client.ftp.FtpClientImpl;
+import org.yggd.server.FtpEmbeddedServerBuilder;
+import org.yggd.server.ListeningServer;
+import org.yggd.server.ServerBuilder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * STOR/RETR of one file per operation against the in-memory file system. With {@code security=FTPS} the
+ * control connection uses explicit TLS. commons-net never resumes a TLS session on a data socket, so every
+ * data connection is a full handshake and small files show its cost. {@code FTPS_CACHED} also enables the
+ * server session cache and shares one client SSLContext, so a new control connection ({@link #storReconnect})
+ * resumes an earlier session. {@code fullHandshakes} counts the server certificate checks, which only full
+ * handshakes do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FtpTransferBenchmark {
+
+    private static final String USER = "user1";
+    private static final String PASSWORD = "password";
+    private static final AtomicLong FULL_HANDSHAKES = new AtomicLong();
+
+    @Param({"1024", "1048576"})
+    private int size;
+
+    @Param({"PLAIN", "FTPS", "FTPS_CACHED"})
+    private Security security;
+
+    private byte[] payload;
+    private Path keystore;
+    private ListeningServer server;
+    private FtpClientBuilder clientBuilder;
+    private FtpClientImpl client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GeneralSecurityException {
+        payload = new byte[size];
+        final FtpEmbeddedServerBuilder builder = ServerBuilder.withFtp()
+                .port(0)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true));
+        SSLContext sslContext = null;
+        TrustManager trustManager = null;
+        if (security != Security.PLAIN) {
+            keystore = BenchmarkFiles.copyResource("/security/ftpserver.jks", ".jks");
+            builder.ssl(s -> {
+                s.keystorePath(keystore);
+                s.keystorePassword("password");
+                s.keyPassword("password");
+                s.explicit();
+                if (security == Security.FTPS_CACHED) {
+                    s.sessionCacheSize(1000);
+                    s.sessionTimeout(600);
+                }
+                s.fastCiphers();
+            });
+            if (security == Security.FTPS_CACHED) {
+                sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, new TrustManager[] {new CountingTrustManager()}, null);
+            } else {
+                trustManager = new CountingTrustManager();
+            }
+        }
+        server = builder.build();
+        server.start();
+        clientBuilder = new FtpClientBuilder("localhost", server.boundAddress().getPort())
+                .username(USER)
+                .password(PASSWORD)
+                .maxConnections(1);
+        if (security != Security.PLAIN) {
+            clientBuilder.ftps(false);
+            if (sslContext != null) {
+                clientBuilder.sslContext(sslContext);
+            } else {
+                clientBuilder.trustManager(trustManager);
+            }
+        }
+        client = clientBuilder.build();
+        client.put("/retr.dat", new ByteArrayInputStream(payload));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop();
+        if (keystore != null) {
+            Files.deleteIfExists(keystore);
+        }
+    }
+
+    @Benchmark
+    public void stor(Handshakes handshakes) {
+        client.put("/stor.dat", new ByteArrayInputStream(payload));
+        handshakes.count();
+    }
+
+    @Benchmark
+    public int retr(Handshakes handshakes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        client.get("/retr.dat", out);
+        handshakes.count();
+        return out.size();
+    }
+
+    /**
+     * New control connection per file, as batch jobs that connect for every transfer do.
+     */
+    @Benchmark
+    public void storReconnect(Handshakes handshakes) {
+        try (FtpClientImpl reconnected = clientBuilder.build()) {
+            reconnected.put("/stor.dat", new ByteArrayInputStream(payload));
+        }
+        handshakes.count();
+    }
+
+    public enum Security {
+        PLAIN, FTPS, FTPS_CACHED
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Handshakes {
+
+        public long fullHandshakes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            fullHandshakes = 0L;
+            FULL_HANDSHAKES.set(0L);
+        }
+
+        void count() {
+            fullHandshakes += FULL_HANDSHAKES.getAndSet(0L);
+        }
+    }
+
+    /**
+     * Accepts any server certificate. The check runs once per full handshake, resumed handshakes skip it.
+     */
+    private static class CountingTrustManager implements X509TrustManager {
+
+        private final X509TrustManager delegate = (X509TrustManager) TrustManagerUtils.getAcceptAllTrustManager();
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            // client certificates are not used.
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            FULL_HANDSHAKES.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+}
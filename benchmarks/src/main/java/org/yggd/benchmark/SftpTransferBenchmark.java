@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.yggd.client.sftp.SftpClientBuilder;
+import org.yggd.client.sftp.SftpClientImpl;
+import org.yggd.server.ListeningServer;
+import org.yggd.server.ServerBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * put/get of one file per operation over a single SFTP channel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SftpTransferBenchmark {
+
+    private static final String USER = "user1";
+
+    @Param({"1024", "1048576"})
+    private int size;
+
+    private byte[] payload;
+    private Path home;
+    private Path hostKey;
+    private Path publicKey;
+    private Path privateKey;
+    private ListeningServer server;
+    private SftpClientImpl client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        payload = new byte[size];
+        home = Files.createTempDirectory("sftpBenchmark");
+        hostKey = BenchmarkFiles.copyResource("/security/hostkey.ser", ".ser");
+        publicKey = BenchmarkFiles.copyResource("/security/id_rsa.pub", ".pub");
+        privateKey = BenchmarkFiles.copyResource("/security/id_rsa", "");
+        server = ServerBuilder.withSftp()
+                .port(0)
+                .directory(home)
+                .keyPairProvider(hostKey)
+                .publicKeyAuthenticate(publicKey,
+                        (username, clientkey, session, serverkey) ->
+                                USER.equals(username) && serverkey.equals(clientkey))
+                .build();
+        server.start();
+        client = new SftpClientBuilder("localhost", server.boundAddress().getPort())
+                .username(USER)
+                .privateKey(privateKey.toFile(), "password")
+                .build();
+        client.put("get.dat", new ByteArrayInputStream(payload));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop();
+        BenchmarkFiles.deleteRecursively(home);
+        Files.deleteIfExists(hostKey);
+        Files.deleteIfExists(publicKey);
+        Files.deleteIfExists(privateKey);
+    }
+
+    @Benchmark
+    public void put() {
+        client.put("put.dat", new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public int get() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        client.get("get.dat", out);
+        return out.size();
+    }
+}
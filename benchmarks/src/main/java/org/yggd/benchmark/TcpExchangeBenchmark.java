@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.yggd.client.tcp.TcpClient;
+import org.yggd.client.tcp.TcpClientImpl;
+import org.yggd.runtime.EmbeddedRuntime;
+import org.yggd.server.ListeningServer;
+import org.yggd.server.ServerBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request/response exchange per operation. The client is created once on an {@link EmbeddedRuntime}, so its
+ * event loops are reused; every exchange still opens a new connection, which is part of the measurement.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TcpExchangeBenchmark {
+
+    @Param({"64", "1024", "8192"})
+    private int payloadSize;
+
+    private byte[] payload;
+    private ListeningServer server;
+    private EmbeddedRuntime runtime;
+    private TcpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = new byte[payloadSize];
+        server = ServerBuilder.withTcp()
+                .port(0)
+                .active(() -> payload)
+                .read(b -> {})
+                .build();
+        server.start();
+        runtime = new EmbeddedRuntime();
+        client = new TcpClientImpl(runtime).connect("localhost", server.boundAddress().getPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        runtime.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte[] throughput() {
+        return exchange();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] latency() {
+        return exchange();
+    }
+
+    private byte[] exchange() {
+        return client.exchange(payload);
+    }
+}
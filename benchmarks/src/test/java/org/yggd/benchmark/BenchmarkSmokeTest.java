@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.benchmark;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Runs every benchmark once, in-process and without warmup, so a broken setup fails the build
+ * instead of the next benchmark run. The numbers are meaningless.
+ */
+public class BenchmarkSmokeTest {
+
+    @Test
+    public void testTcpExchange() throws RunnerException {
+        smoke(TcpExchangeBenchmark.class, 2 * 3);
+    }
+
+    @Test
+    public void testSftpTransfer() throws RunnerException {
+        smoke(SftpTransferBenchmark.class, 2 * 2);
+    }
+
+    @Test
+    public void testFtpTransfer() throws RunnerException {
+        smoke(FtpTransferBenchmark.class, 3 * 2 * 3);
+    }
+
+    @Test
+    public void testColdStart() throws RunnerException {
+        smoke(ColdStartBenchmark.class, 3);
+    }
+
+    private static void smoke(Class<?> benchmark, int expectedRuns) throws RunnerException {
+        final Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(benchmark.getName() + "\\.")
+                .forks(0)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .measurementTime(TimeValue.milliseconds(100))
+                .shouldFailOnError(true)
+                .build()).run();
+        assertThat(results.size(), is(expectedRuns));
+    }
+}
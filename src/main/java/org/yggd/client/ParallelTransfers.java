@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client;
+
+import org.yggd.runtime.EmbeddedRuntime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs transfer tasks of the SFTP and FTP clients on up to {@code parallelism} threads,
+ * results are returned in task order.
+ */
+public final class ParallelTransfers {
+
+    private ParallelTransfers() {
+    }
+
+    public static ExecutorService newExecutor(EmbeddedRuntime runtime, int threads, String threadName) {
+        if (runtime != null) {
+            return runtime.boundedExecutor(threads);
+        }
+        return Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static TransferSummary transferAll(List<Callable<TransferResult>> tasks, int parallelism,
+                                              EmbeddedRuntime runtime, String threadName) {
+        return new TransferSummary(runAll(tasks, parallelism, runtime, threadName));
+    }
+
+    public static <T> List<T> runAll(List<Callable<T>> tasks, int parallelism,
+                                     EmbeddedRuntime runtime, String threadName) {
+        final int threads = Math.min(parallelism, tasks.size());
+        final List<T> results = new ArrayList<>(tasks.size());
+        if (threads <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+        final ExecutorService executor = newExecutor(runtime, threads, threadName);
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
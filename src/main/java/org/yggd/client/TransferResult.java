@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a single file transfer, shared by the SFTP and FTP clients.
+ */
+public class TransferResult {
+
+    public enum Status {
+        TRANSFERRED, SKIPPED, FAILED
+    }
+
+    private final Path localPath;
+    private final String remotePath;
+    private final Status status;
+    private final long bytes;
+    private final long elapsedNanos;
+    private final Throwable error;
+    private final String checksum;
+    private final boolean checksumVerified;
+
+    public TransferResult(Path localPath, String remotePath, Status status, long bytes, long elapsedNanos,
+                          Throwable error) {
+        this(localPath, remotePath, status, bytes, elapsedNanos, error, null, false);
+    }
+
+    public TransferResult(Path localPath, String remotePath, Status status, long bytes, long elapsedNanos,
+                          Throwable error, String checksum, boolean checksumVerified) {
+        this.localPath = localPath;
+        this.remotePath = remotePath;
+        this.status = status;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+        this.checksum = checksum;
+        this.checksumVerified = checksumVerified;
+    }
+
+    public Path getLocalPath() {
+        return localPath;
+    }
+
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Hex encoded checksum of the whole file, or {@code null} if no algorithm was requested.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Whether the checksum was verified against the remote sidecar file, downloads only. Uploads are never
+     * verified, their checksum is computed from the local file.
+     */
+    public boolean isChecksumVerified() {
+        return checksumVerified;
+    }
+
+    @Override
+    public String toString() {
+        return status + " " + localPath + " <-> " + remotePath + " (" + bytes + " bytes)";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TransferSummary {
+
+    private final List<TransferResult> results;
+
+    public TransferSummary(List<TransferResult> results) {
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    public List<TransferResult> getResults() {
+        return results;
+    }
+
+    public List<TransferResult> getResults(TransferResult.Status status) {
+        return results.stream().filter(r -> r.getStatus() == status).collect(Collectors.toList());
+    }
+
+    public long count(TransferResult.Status status) {
+        return results.stream().filter(r -> r.getStatus() == status).count();
+    }
+
+    public long getTransferredBytes() {
+        return results.stream()
+                .filter(r -> r.getStatus() == TransferResult.Status.TRANSFERRED)
+                .mapToLong(TransferResult::getBytes)
+                .sum();
+    }
+
+    public boolean isSuccess() {
+        return count(TransferResult.Status.FAILED) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "transferred=" + count(TransferResult.Status.TRANSFERRED)
+                + ", skipped=" + count(TransferResult.Status.SKIPPED)
+                + ", failed=" + count(TransferResult.Status.FAILED)
+                + ", bytes=" + getTransferredBytes();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.ftp;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.yggd.client.TransferSummary;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+public interface FtpClient {
+
+    FtpClient connect();
+
+    /**
+     * Buffered listing, the raw listing is read in full before the stream is returned.
+     * Entries are parsed lazily while the stream is consumed.
+     */
+    Stream<FTPFile> list(String path);
+
+    void put(Path localFile, String remoteFile);
+    void put(String remoteFile, InputStream inputStream);
+
+    void get(String remoteFile, Path localFile);
+    void get(String remoteFile, OutputStream outputStream);
+
+    TransferSummary putAll(Collection<Path> localFiles, String remoteDir);
+    TransferSummary getAll(Collection<String> remoteFiles, Path localDir);
+
+    void disconnect();
+}
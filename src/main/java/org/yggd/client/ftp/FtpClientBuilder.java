@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.ftp;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.yggd.runtime.EmbeddedRuntime;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class FtpClientBuilder {
+
+    private final String host;
+    private final int port;
+
+    private String username;
+    private String password;
+
+    private boolean passive = true;
+    private int bufferSize = 64 * 1024;
+    private int maxConnections = 4;
+    private long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private int connectTimeoutMillis = 0;
+    private long validateAfterIdleMillis = TimeUnit.SECONDS.toMillis(1);
+    private boolean ftps = false;
+    private boolean implicit = false;
+    private TrustManager trustManager;
+    private SSLContext sslContext;
+    private EmbeddedRuntime runtime;
+
+    public FtpClientBuilder(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public FtpClientBuilder username(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public FtpClientBuilder password(String password) {
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * Passive mode is the default, false switches to active mode.
+     */
+    public FtpClientBuilder passive(boolean passive) {
+        this.passive = passive;
+        return this;
+    }
+
+    /**
+     * Buffer size of the transfer streams and the data socket.
+     */
+    public FtpClientBuilder bufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive.");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public FtpClientBuilder maxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public FtpClientBuilder borrowTimeout(long timeout, TimeUnit timeUnit) {
+        this.borrowTimeoutMillis = timeUnit.toMillis(timeout);
+        return this;
+    }
+
+    public FtpClientBuilder connectTimeout(long timeout, TimeUnit timeUnit) {
+        this.connectTimeoutMillis = (int) timeUnit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Idle connections older than this are checked with a NOOP when borrowed, so that connections closed by the
+     * server's idle timeout are replaced instead of failing the next operation. Defaults to 1 second.
+     */
+    public FtpClientBuilder validateAfterIdle(long timeout, TimeUnit timeUnit) {
+        this.validateAfterIdleMillis = timeUnit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * FTP over TLS, implicit or explicit (AUTH TLS). The data channel is protected as well.
+     */
+    public FtpClientBuilder ftps(boolean implicit) {
+        this.ftps = true;
+        this.implicit = implicit;
+        return this;
+    }
+
+    public FtpClientBuilder trustManager(TrustManager trustManager) {
+        this.trustManager = trustManager;
+        return this;
+    }
+
+    /**
+     * SSLContext shared by all FTPS connections, so a new control connection can resume the TLS session
+     * of an earlier one. Without it every connection gets its own context. Takes precedence over trustManager.
+     */
+    public FtpClientBuilder sslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    /**
+     * Runs putAll/getAll on the runtime's shared pool instead of a pool per call.
+     */
+    public FtpClientBuilder runtime(EmbeddedRuntime runtime) {
+        this.runtime = runtime;
+        return this;
+    }
+
+    public FtpClientImpl build() {
+        return new FtpClientImpl(new FtpConnectionPool(this::createConnection, maxConnections, borrowTimeoutMillis,
+                validateAfterIdleMillis), bufferSize, runtime);
+    }
+
+    private FTPClient createConnection() {
+        final FTPClient ftpClient;
+        if (ftps) {
+            final FTPSClient ftpsClient = sslContext != null ? new FTPSClient(implicit, sslContext) : new FTPSClient(implicit);
+            if (sslContext == null && trustManager != null) {
+                ftpsClient.setTrustManager(trustManager);
+            }
+            ftpClient = ftpsClient;
+        } else {
+            ftpClient = new FTPClient();
+        }
+        ftpClient.setConnectTimeout(connectTimeoutMillis);
+        ftpClient.setBufferSize(bufferSize);
+        ftpClient.setSendDataSocketBufferSize(bufferSize);
+        ftpClient.setReceieveDataSocketBufferSize(bufferSize);
+        try {
+            ftpClient.connect(host, port);
+            if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+                throw new IOException("ftp server refused connection: " + ftpClient.getReplyString().trim());
+            }
+            if (!ftpClient.login(username, password)) {
+                throw new IOException("ftp login failed: " + ftpClient.getReplyString().trim());
+            }
+            if (ftps) {
+                ((FTPSClient) ftpClient).execPBSZ(0);
+                ((FTPSClient) ftpClient).execPROT("P");
+            }
+            if (passive) {
+                ftpClient.enterLocalPassiveMode();
+            } else {
+                ftpClient.enterLocalActiveMode();
+            }
+            ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+            return ftpClient;
+        } catch (IOException e) {
+            if (ftpClient.isConnected()) {
+                try {
+                    ftpClient.disconnect();
+                } catch (IOException ignore) {
+                    // ignore.
+                }
+            }
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
+import org.yggd.client.ClientCallback;
+import org.yggd.client.ParallelTransfers;
+import org.yggd.client.TransferResult;
+import org.yggd.client.TransferSummary;
+import org.yggd.runtime.EmbeddedRuntime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Thread safe {@link FtpClient} lending pooled control connections for each operation.
+ */
+public class FtpClientImpl implements FtpClient, AutoCloseable {
+
+    private static final int LIST_PAGE_SIZE = 100;
+
+    private final FtpConnectionPool pool;
+    private final int bufferSize;
+    private final EmbeddedRuntime runtime;
+
+    FtpClientImpl(FtpConnectionPool pool, int bufferSize, EmbeddedRuntime runtime) {
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+        this.runtime = runtime;
+    }
+
+    @Override
+    public FtpClient connect() {
+        pool.lease().close();
+        return this;
+    }
+
+    <T> T execute(ClientCallback<FTPClient, T, IOException> callback) {
+        try (FtpConnectionPool.Lease lease = pool.lease()) {
+            try {
+                return callback.doWith(lease.connection());
+            } catch (IOException e) {
+                // negative replies keep the connection, only I/O failures, including closed connections, drop it.
+                lease.invalidate();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Buffered listing: the raw listing is read in full with one data connection and the connection is released
+     * before the stream is returned, only parsing is done lazily while the stream is consumed.
+     */
+    @Override
+    public Stream<FTPFile> list(String path) {
+        final FTPListParseEngine engine = execute(ftpClient -> {
+            final FTPListParseEngine e = ftpClient.initiateListParsing(path);
+            check(ftpClient, FTPReply.isPositiveCompletion(ftpClient.getReplyCode()), "list " + path);
+            return e;
+        });
+        final Iterator<FTPFile> iterator = new Iterator<FTPFile>() {
+            private final Deque<FTPFile> page = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                while (page.isEmpty() && engine.hasNext()) {
+                    for (FTPFile file : engine.getNext(LIST_PAGE_SIZE)) {
+                        if (file != null) {
+                            page.add(file);
+                        }
+                    }
+                }
+                return !page.isEmpty();
+            }
+
+            @Override
+            public FTPFile next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.poll();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public void put(Path localFile, String remoteFile) {
+        execute(ftpClient -> {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(localFile), bufferSize)) {
+                check(ftpClient, ftpClient.storeFile(remoteFile, in), "store " + remoteFile);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String remoteFile, InputStream inputStream) {
+        execute(ftpClient -> {
+            check(ftpClient, ftpClient.storeFile(remoteFile, inputStream), "store " + remoteFile);
+            return null;
+        });
+    }
+
+    @Override
+    public void get(String remoteFile, Path localFile) {
+        execute(ftpClient -> {
+            if (localFile.getParent() != null) {
+                Files.createDirectories(localFile.getParent());
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(localFile), bufferSize)) {
+                check(ftpClient, ftpClient.retrieveFile(remoteFile, out), "retrieve " + remoteFile);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void get(String remoteFile, OutputStream outputStream) {
+        execute(ftpClient -> {
+            check(ftpClient, ftpClient.retrieveFile(remoteFile, outputStream), "retrieve " + remoteFile);
+            return null;
+        });
+    }
+
+    @Override
+    public TransferSummary putAll(Collection<Path> localFiles, String remoteDir) {
+        final List<Callable<TransferResult>> tasks = new ArrayList<>();
+        localFiles.forEach(f -> tasks.add(() -> transfer(f, remotePath(remoteDir, f.getFileName().toString()), true)));
+        return ParallelTransfers.transferAll(tasks, pool.getMaxConnections(), runtime, "ftp-transfer");
+    }
+
+    @Override
+    public TransferSummary getAll(Collection<String> remoteFiles, Path localDir) {
+        final List<Callable<TransferResult>> tasks = new ArrayList<>();
+        remoteFiles.forEach(f -> tasks.add(() -> transfer(localDir.resolve(remoteName(f)), f, false)));
+        return ParallelTransfers.transferAll(tasks, pool.getMaxConnections(), runtime, "ftp-transfer");
+    }
+
+    public int getMaxConnections() {
+        return pool.getMaxConnections();
+    }
+
+    public int getActiveConnections() {
+        return pool.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        return pool.getIdleConnections();
+    }
+
+    public int getConnections() {
+        return pool.getConnections();
+    }
+
+    @Override
+    public void disconnect() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private TransferResult transfer(Path local, String remote, boolean upload) {
+        final long start = System.nanoTime();
+        try {
+            if (upload) {
+                put(local, remote);
+            } else {
+                get(remote, local);
+            }
+            return new TransferResult(local, remote, TransferResult.Status.TRANSFERRED, Files.size(local),
+                    System.nanoTime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            return new TransferResult(local, remote, TransferResult.Status.FAILED, 0L, System.nanoTime() - start, e);
+        }
+    }
+
+    private static void check(FTPClient ftpClient, boolean success, String operation) {
+        if (!success) {
+            throw new IllegalStateException("failed " + operation + ": " + ftpClient.getReplyString().trim());
+        }
+    }
+
+    private static String remotePath(String remoteDir, String name) {
+        return remoteDir.endsWith("/") ? remoteDir + name : remoteDir + "/" + name;
+    }
+
+    private static String remoteName(String remoteFile) {
+        return remoteFile.substring(remoteFile.lastIndexOf('/') + 1);
+    }
+}
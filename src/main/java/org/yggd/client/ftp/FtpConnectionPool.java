@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of logged-in control connections.
+ * Idle connections are reused last-in first-out and validated when borrowed, with a NOOP when they have been idle
+ * long enough for the server to close them.
+ */
+class FtpConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FtpConnectionPool.class);
+
+    private final Supplier<FTPClient> connectionFactory;
+    private final int maxConnections;
+    private final long borrowTimeoutMillis;
+    private final long validateAfterIdleNanos;
+
+    private final Semaphore permits;
+    private final BlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    FtpConnectionPool(Supplier<FTPClient> connectionFactory, int maxConnections, long borrowTimeoutMillis,
+                      long validateAfterIdleMillis) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive.");
+        }
+        this.connectionFactory = connectionFactory;
+        this.maxConnections = maxConnections;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validateAfterIdleNanos = TimeUnit.MILLISECONDS.toNanos(validateAfterIdleMillis);
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    int getIdleConnections() {
+        return idle.size();
+    }
+
+    int getActiveConnections() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    Lease lease() {
+        return new Lease(borrow());
+    }
+
+    FTPClient borrow() {
+        if (closed) {
+            throw new IllegalStateException("ftp connection pool is closed.");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("timeout waiting for ftp connection:" + borrowTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        try {
+            IdleConnection idleConnection;
+            while ((idleConnection = idle.pollFirst()) != null) {
+                if (isValid(idleConnection.connection) && isAlive(idleConnection)) {
+                    return idleConnection.connection;
+                }
+                destroy(idleConnection.connection);
+            }
+            final FTPClient connection = connectionFactory.get();
+            connections.incrementAndGet();
+            return connection;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(FTPClient connection, boolean valid) {
+        try {
+            if (!closed && valid && isValid(connection)) {
+                idle.offerFirst(new IdleConnection(connection, System.nanoTime()));
+            } else {
+                destroy(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        IdleConnection idleConnection;
+        while ((idleConnection = idle.pollFirst()) != null) {
+            destroy(idleConnection.connection);
+        }
+    }
+
+    private void destroy(FTPClient connection) {
+        connections.decrementAndGet();
+        if (!connection.isConnected()) {
+            return;
+        }
+        try {
+            connection.logout();
+        } catch (IOException e) {
+            logger.debug("failed ftp logout.", e);
+        }
+        try {
+            connection.disconnect();
+        } catch (IOException e) {
+            logger.debug("failed ftp disconnect.", e);
+        }
+    }
+
+    private static boolean isValid(FTPClient connection) {
+        return connection.isConnected() && connection.isAvailable();
+    }
+
+    /**
+     * The socket doesn't tell whether the server closed an idle connection, a NOOP does.
+     */
+    private boolean isAlive(IdleConnection idleConnection) {
+        if (System.nanoTime() - idleConnection.since < validateAfterIdleNanos) {
+            return true;
+        }
+        try {
+            return idleConnection.connection.sendNoOp();
+        } catch (IOException e) {
+            logger.debug("discard idle ftp connection.", e);
+            return false;
+        }
+    }
+
+    private static final class IdleConnection {
+
+        private final FTPClient connection;
+        private final long since;
+
+        private IdleConnection(FTPClient connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    class Lease implements AutoCloseable {
+
+        private final FTPClient connection;
+        private boolean valid = true;
+        private boolean released = false;
+
+        private Lease(FTPClient connection) {
+            this.connection = connection;
+        }
+
+        FTPClient connection() {
+            return connection;
+        }
+
+        /**
+         * Marks the connection unusable, it is discarded instead of being reused.
+         */
+        void invalidate() {
+            valid = false;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(connection, valid);
+            }
+        }
+    }
+}
@@ -0,0 +1,767 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import org.yggd.client.ClientCallback;
+import org.yggd.client.ParallelTransfers;
+import org.yggd.client.TransferResult;
+import org.yggd.client.TransferSummary;
+import org.yggd.runtime.EmbeddedRuntime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.jcraft.jsch.ChannelSftp.LsEntrySelector.CONTINUE;
+
+abstract class AbstractSftpClient implements SftpClient {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PREFIX_CHECK_SIZE = 64 * 1024;
+    private static final int LISTING_QUEUE_SIZE = 1024;
+
+    private final SftpClientMetrics metrics = new SftpClientMetrics();
+    private RemoteMetadataCache metadataCache;
+    private EmbeddedRuntime runtime;
+
+    abstract ChannelLease lease();
+
+    /**
+     * Channel for a background listing, held while its queue is full and never shared with {@link #lease()} callers.
+     */
+    abstract ChannelLease listingLease();
+
+    int parallelism() {
+        return 1;
+    }
+
+    void metadataCache(RemoteMetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    void runtime(EmbeddedRuntime runtime) {
+        this.runtime = runtime;
+    }
+
+    ExecutorService newExecutor(int threads, String threadName) {
+        return ParallelTransfers.newExecutor(runtime, threads, threadName);
+    }
+
+    <T> T execute(ClientCallback<ChannelSftp, T, SftpException> callback) {
+        try (ChannelLease lease = lease()) {
+            try {
+                return callback.doWith(lease.channel());
+            } catch (SftpException e) {
+                if (e.getCause() != null) {
+                    lease.invalidate();
+                }
+                throw new IllegalStateException(e);
+            } catch (RuntimeException e) {
+                lease.invalidate();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void ls(String path, Consumer<ChannelSftp.LsEntry> c) {
+        if (metadataCache != null) {
+            listing(path).forEach(c);
+            return;
+        }
+        execute(channelSftp -> {
+            final Vector<?> entries = channelSftp.ls(path);
+            entries.forEach(e -> c.accept((ChannelSftp.LsEntry) e));
+            return null;
+        });
+    }
+
+    @Override
+    public List<ChannelSftp.LsEntry> lsMatch(String path, final Predicate<ChannelSftp.LsEntry> p) {
+        if (metadataCache != null) {
+            return listing(path).stream().filter(p).collect(Collectors.toList());
+        }
+        final List<ChannelSftp.LsEntry> list = new ArrayList<>();
+        execute(channelSftp -> {
+            channelSftp.ls(path, entry -> {
+                if (p.test(entry)) {
+                    list.add(entry);
+                }
+                return CONTINUE;
+            });
+            return null;
+        });
+        return list;
+    }
+
+    /**
+     * The directory is read in the background and handed over through a bounded queue, the stream must be closed.
+     * The client stays usable while the stream is consumed.
+     */
+    @Override
+    public Stream<ChannelSftp.LsEntry> lsStream(String path) {
+        return new RemoteListing(this, path, false, 1, LISTING_QUEUE_SIZE).stream().map(RemoteEntry::getEntry);
+    }
+
+    /**
+     * Recursive listing, subdirectories are read in parallel. The caller may use this client while consuming
+     * the stream. The stream must be closed.
+     */
+    @Override
+    public Stream<RemoteEntry> walk(String path) {
+        return new RemoteListing(this, path, true, parallelism() - 1, LISTING_QUEUE_SIZE).stream();
+    }
+
+    @Override
+    public SftpATTRS stat(String path) {
+        final SftpATTRS attrs = statCached(path);
+        if (attrs == null) {
+            throw new IllegalStateException(new SftpException(ChannelSftp.SSH_FX_NO_SUCH_FILE, "No such file: " + path));
+        }
+        return attrs;
+    }
+
+    @Override
+    public boolean exists(String path) {
+        return statCached(path) != null;
+    }
+
+    @Override
+    public void rm(String path) {
+        try {
+            execute(channelSftp -> {
+                channelSftp.rm(path);
+                return null;
+            });
+        } finally {
+            invalidate(path);
+        }
+    }
+
+    @Override
+    public RemoteMetadataCache getMetadataCache() {
+        if (metadataCache == null) {
+            throw new IllegalStateException("metadata cache is not enabled.");
+        }
+        return metadataCache;
+    }
+
+    @Override
+    public void put(File f) {
+        put(f.getAbsolutePath());
+    }
+
+    @Override
+    public void put(String fileName) {
+        put(fileName, (TransferListener) null);
+    }
+
+    @Override
+    public void put(String fileName, TransferListener listener) {
+        final TransferMonitor monitor = monitor(TransferProgress.Direction.PUT, listener);
+        final String remote = new File(fileName).getName();
+        try {
+            monitored(monitor, channelSftp -> {
+                channelSftp.put(fileName, remote, monitor);
+                return null;
+            });
+        } finally {
+            invalidate(remote);
+        }
+    }
+
+    @Override
+    public void put(String fileName, InputStream inputStream) {
+        put(fileName, inputStream, null);
+    }
+
+    @Override
+    public void put(String fileName, InputStream inputStream, TransferListener listener) {
+        final TransferMonitor monitor = monitor(TransferProgress.Direction.PUT, listener);
+        try {
+            monitored(monitor, channelSftp -> {
+                channelSftp.put(inputStream, fileName, monitor);
+                return null;
+            });
+        } finally {
+            invalidate(fileName);
+        }
+    }
+
+    @Override
+    public InputStream get(String fileName) {
+        final ChannelLease lease = lease();
+        try {
+            return new FilterInputStream(lease.channel().get(fileName)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        lease.close();
+                    }
+                }
+            };
+        } catch (SftpException e) {
+            lease.close();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void get(String fileName, OutputStream outputStream) {
+        get(fileName, outputStream, null);
+    }
+
+    @Override
+    public void get(String fileName, OutputStream outputStream, TransferListener listener) {
+        final TransferMonitor monitor = monitor(TransferProgress.Direction.GET, listener);
+        monitored(monitor, channelSftp -> {
+            channelSftp.get(fileName, outputStream, monitor);
+            return null;
+        });
+    }
+
+    @Override
+    public SftpClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public TransferSummary putAll(Collection<Path> localFiles, String remoteDir) {
+        final List<Callable<TransferResult>> tasks = new ArrayList<>();
+        localFiles.forEach(f -> tasks.add(() -> upload(f, remotePath(remoteDir, f.getFileName().toString()))));
+        return transferAll(tasks);
+    }
+
+    @Override
+    public TransferSummary getAll(Collection<String> remoteFiles, Path localDir) {
+        final List<Callable<TransferResult>> tasks = new ArrayList<>();
+        remoteFiles.forEach(f -> tasks.add(() -> download(f, localDir.resolve(remoteName(f)))));
+        return transferAll(tasks);
+    }
+
+    /**
+     * Upload-only: local files missing or changed on the remote side are uploaded,
+     * remote files are never downloaded or removed. Missing remote directories are created.
+     */
+    @Override
+    public TransferSummary sync(Path localDir, String remoteDir) {
+        final List<Path> directories = new ArrayList<>();
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(localDir)) {
+            walk.forEach(p -> (Files.isDirectory(p) ? directories : files).add(p));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // parents first, before files are transferred in parallel.
+        execute(channelSftp -> {
+            for (Path dir : directories) {
+                mkdirs(channelSftp, remotePath(remoteDir, localDir.relativize(dir)));
+            }
+            return null;
+        });
+        final List<Callable<TransferResult>> tasks = new ArrayList<>();
+        files.forEach(f -> tasks.add(() -> upload(f, remotePath(remoteDir, localDir.relativize(f)))));
+        return transferAll(tasks);
+    }
+
+    @Override
+    public TransferResult getSegmented(String remoteFile, Path localFile, int segments) {
+        final long start = System.nanoTime();
+        try {
+            final SftpATTRS remoteAttrs = execute(channelSftp -> channelSftp.stat(remoteFile));
+            final long size = remoteAttrs.getSize();
+            final int count = (int) Math.max(1L, Math.min(segments, size));
+            final long segmentSize = (size + count - 1) / count;
+            if (localFile.getParent() != null) {
+                Files.createDirectories(localFile.getParent());
+            }
+            try (FileChannel fileChannel = FileChannel.open(localFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (size > 0) {
+                    // extend the file once, segments are written at their own positions.
+                    fileChannel.write(ByteBuffer.allocate(1), size - 1);
+                }
+                final List<Callable<Long>> tasks = new ArrayList<>();
+                for (long offset = 0; offset < size; offset += segmentSize) {
+                    final long segmentOffset = offset;
+                    final long length = Math.min(segmentSize, size - offset);
+                    tasks.add(() -> execute(channelSftp -> readSegment(channelSftp, remoteFile, fileChannel,
+                            segmentOffset, length)));
+                }
+                runAll(tasks);
+            }
+            Files.setLastModifiedTime(localFile, FileTime.fromMillis(TimeUnit.SECONDS.toMillis(remoteAttrs.getMTime())));
+            return result(localFile, remoteFile, true, size, start);
+        } catch (IOException | RuntimeException e) {
+            return new TransferResult(localFile, remoteFile, TransferResult.Status.FAILED, 0L,
+                    System.nanoTime() - start, e);
+        }
+    }
+
+    @Override
+    public TransferResult putResumable(Path localFile, String remoteFile, String checksumAlgorithm) {
+        final long start = System.nanoTime();
+        try {
+            final long size = Files.size(localFile);
+            final SftpATTRS remoteAttrs = execute(channelSftp -> statIfExists(channelSftp, remoteFile));
+            final long remoteSize = remoteAttrs == null ? 0L : remoteAttrs.getSize();
+            // never append to content that differs from the local file, upload it again instead.
+            final int mode = remoteSize > 0 && remoteSize <= size
+                    && remotePrefixMatches(localFile, remoteFile, remoteSize)
+                    ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE;
+            final MessageDigest digest = digest(checksumAlgorithm);
+            final ResumeInputStream in = new ResumeInputStream(Files.newInputStream(localFile), digest);
+            final String checksum = execute(channelSftp -> {
+                try (InputStream src = in) {
+                    // JSch skips the bytes already on the server, ResumeInputStream still hashes them.
+                    channelSftp.put(src, remoteFile, null, mode);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                final long uploaded = channelSftp.stat(remoteFile).getSize();
+                if (uploaded != size) {
+                    throw new IllegalStateException("size mismatch for " + remoteFile
+                            + ", expected:" + size + " actual:" + uploaded);
+                }
+                if (digest == null) {
+                    return null;
+                }
+                final String hex = hex(digest.digest());
+                final String sidecar = hex + "  " + remoteName(remoteFile) + "\n";
+                channelSftp.put(new ByteArrayInputStream(sidecar.getBytes(StandardCharsets.US_ASCII)),
+                        sidecarPath(remoteFile, checksumAlgorithm));
+                return hex;
+            });
+            // the server can't hash the remote file, so the checksum only describes the local content.
+            return new TransferResult(localFile, remoteFile, TransferResult.Status.TRANSFERRED,
+                    size - in.skipped, System.nanoTime() - start, null, checksum, false);
+        } catch (IOException | RuntimeException e) {
+            return new TransferResult(localFile, remoteFile, TransferResult.Status.FAILED, 0L,
+                    System.nanoTime() - start, e);
+        } finally {
+            invalidate(remoteFile);
+            if (checksumAlgorithm != null) {
+                invalidate(sidecarPath(remoteFile, checksumAlgorithm));
+            }
+        }
+    }
+
+    /**
+     * Compares the last {@code PREFIX_CHECK_SIZE} bytes of the remote prefix, so resuming never reads back
+     * the whole upload.
+     */
+    private boolean remotePrefixMatches(Path localFile, String remoteFile, long length) throws IOException {
+        final long from = Math.max(0L, length - PREFIX_CHECK_SIZE);
+        final MessageDigest local = digest("SHA-256");
+        try (FileChannel channel = FileChannel.open(localFile, StandardOpenOption.READ)) {
+            channel.position(from);
+            update(local, Channels.newInputStream(channel), length - from);
+        }
+        final MessageDigest remote = digest("SHA-256");
+        execute(channelSftp -> {
+            try (InputStream in = channelSftp.get(remoteFile, null, from)) {
+                update(remote, in, length - from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        return MessageDigest.isEqual(local.digest(), remote.digest());
+    }
+
+    @Override
+    public TransferResult getResumable(String remoteFile, Path localFile, String checksumAlgorithm) {
+        final long start = System.nanoTime();
+        try {
+            final SftpATTRS remoteAttrs = execute(channelSftp -> channelSftp.stat(remoteFile));
+            final long size = remoteAttrs.getSize();
+            long offset = Files.isRegularFile(localFile) ? Files.size(localFile) : 0L;
+            if (offset > size) {
+                offset = 0L;
+            }
+            if (localFile.getParent() != null) {
+                Files.createDirectories(localFile.getParent());
+            }
+            final MessageDigest digest = digest(checksumAlgorithm);
+            if (digest != null && offset > 0) {
+                digestPrefix(localFile, offset, digest);
+            }
+            final long resumeOffset = offset;
+            if (resumeOffset < size) {
+                execute(channelSftp -> {
+                    try (InputStream in = channelSftp.get(remoteFile, null, resumeOffset);
+                         OutputStream out = Files.newOutputStream(localFile, StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE,
+                                 resumeOffset > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                        final byte[] buf = new byte[BUFFER_SIZE];
+                        int read;
+                        while ((read = in.read(buf)) >= 0) {
+                            out.write(buf, 0, read);
+                            if (digest != null) {
+                                digest.update(buf, 0, read);
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+            }
+            String checksum = null;
+            boolean verified = false;
+            if (digest != null) {
+                checksum = hex(digest.digest());
+                final String expected = execute(channelSftp ->
+                        readSidecar(channelSftp, sidecarPath(remoteFile, checksumAlgorithm)));
+                if (expected != null) {
+                    if (!expected.equalsIgnoreCase(checksum)) {
+                        // never resume from corrupted content.
+                        Files.deleteIfExists(localFile);
+                        throw new IllegalStateException("checksum mismatch for " + remoteFile
+                                + ", expected:" + expected + " actual:" + checksum);
+                    }
+                    verified = true;
+                }
+            }
+            Files.setLastModifiedTime(localFile, FileTime.fromMillis(TimeUnit.SECONDS.toMillis(remoteAttrs.getMTime())));
+            return new TransferResult(localFile, remoteFile, TransferResult.Status.TRANSFERRED, size - resumeOffset,
+                    System.nanoTime() - start, null, checksum, verified);
+        } catch (IOException | RuntimeException e) {
+            return new TransferResult(localFile, remoteFile, TransferResult.Status.FAILED, 0L,
+                    System.nanoTime() - start, e);
+        }
+    }
+
+    TransferResult upload(Path local, String remote) {
+        final long start = System.nanoTime();
+        final TransferMonitor monitor = monitor(TransferProgress.Direction.PUT, null);
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(local, BasicFileAttributes.class);
+            final long size = attributes.size();
+            final int mtime = (int) attributes.lastModifiedTime().to(TimeUnit.SECONDS);
+            final boolean transferred = execute(channelSftp -> {
+                final SftpATTRS remoteAttrs = statIfExists(channelSftp, remote);
+                if (remoteAttrs != null && remoteAttrs.getSize() == size && remoteAttrs.getMTime() == mtime) {
+                    return false;
+                }
+                channelSftp.put(local.toString(), remote, monitor);
+                channelSftp.setMtime(remote, mtime);
+                return true;
+            });
+            return result(local, remote, transferred, size, start);
+        } catch (IOException | RuntimeException e) {
+            monitor.failed(e);
+            return new TransferResult(local, remote, TransferResult.Status.FAILED, 0L, System.nanoTime() - start, e);
+        } finally {
+            invalidate(remote);
+        }
+    }
+
+    TransferResult download(String remote, Path local) {
+        final long start = System.nanoTime();
+        final TransferMonitor monitor = monitor(TransferProgress.Direction.GET, null);
+        try {
+            final SftpATTRS remoteAttrs = execute(channelSftp -> channelSftp.stat(remote));
+            final long size = remoteAttrs.getSize();
+            final long mtimeMillis = TimeUnit.SECONDS.toMillis(remoteAttrs.getMTime());
+            if (Files.isRegularFile(local) && Files.size(local) == size
+                    && Files.getLastModifiedTime(local).toMillis() / 1000 == remoteAttrs.getMTime()) {
+                return result(local, remote, false, size, start);
+            }
+            if (local.getParent() != null) {
+                Files.createDirectories(local.getParent());
+            }
+            execute(channelSftp -> {
+                channelSftp.get(remote, local.toString(), monitor);
+                return null;
+            });
+            Files.setLastModifiedTime(local, FileTime.fromMillis(mtimeMillis));
+            return result(local, remote, true, size, start);
+        } catch (IOException | RuntimeException e) {
+            monitor.failed(e);
+            return new TransferResult(local, remote, TransferResult.Status.FAILED, 0L, System.nanoTime() - start, e);
+        }
+    }
+
+    private SftpATTRS statCached(String path) {
+        if (metadataCache == null) {
+            return execute(channelSftp -> statIfExists(channelSftp, path));
+        }
+        final Optional<SftpATTRS> cached = metadataCache.getStat(path);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        final SftpATTRS attrs = execute(channelSftp -> statIfExists(channelSftp, path));
+        metadataCache.putStat(path, attrs);
+        return attrs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ChannelSftp.LsEntry> listing(String path) {
+        final List<ChannelSftp.LsEntry> cached = metadataCache.getListing(path);
+        if (cached != null) {
+            return cached;
+        }
+        final List<ChannelSftp.LsEntry> listing = execute(channelSftp -> new ArrayList<>(channelSftp.ls(path)));
+        metadataCache.putListing(path, listing);
+        return listing;
+    }
+
+    private void invalidate(String path) {
+        if (metadataCache != null && path != null) {
+            metadataCache.invalidate(path);
+        }
+    }
+
+    TransferMonitor monitor(TransferProgress.Direction direction, TransferListener listener) {
+        return new TransferMonitor(direction, metrics, listener);
+    }
+
+    <T> T monitored(TransferMonitor monitor, ClientCallback<ChannelSftp, T, SftpException> callback) {
+        try {
+            return execute(callback);
+        } catch (RuntimeException e) {
+            monitor.failed(e);
+            throw e;
+        }
+    }
+
+    TransferSummary transferAll(List<Callable<TransferResult>> tasks) {
+        return ParallelTransfers.transferAll(tasks, parallelism(), runtime, "sftp-transfer");
+    }
+
+    <T> List<T> runAll(List<Callable<T>> tasks) {
+        return ParallelTransfers.runAll(tasks, parallelism(), runtime, "sftp-transfer");
+    }
+
+    private static long readSegment(ChannelSftp channelSftp, String remoteFile, FileChannel fileChannel,
+                                    long offset, long length) throws SftpException {
+        final byte[] buf = new byte[BUFFER_SIZE];
+        long position = offset;
+        long remaining = length;
+        try (InputStream in = channelSftp.get(remoteFile, null, offset)) {
+            while (remaining > 0) {
+                final int read = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("unexpected end of " + remoteFile + " at " + position);
+                }
+                final ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+                while (bb.hasRemaining()) {
+                    position += fileChannel.write(bb, position);
+                }
+                remaining -= read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return length;
+    }
+
+    static String sidecarPath(String remoteFile, String algorithm) {
+        return remoteFile + "." + algorithm.toLowerCase(Locale.ROOT).replace("-", "");
+    }
+
+    private static String readSidecar(ChannelSftp channelSftp, String sidecar) throws SftpException {
+        if (statIfExists(channelSftp, sidecar) == null) {
+            return null;
+        }
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        channelSftp.get(sidecar, content);
+        final String[] tokens = new String(content.toByteArray(), StandardCharsets.US_ASCII).trim().split("\\s+");
+        return tokens[0].isEmpty() ? null : tokens[0];
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void digestPrefix(Path file, long length, MessageDigest digest) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            update(digest, in, length);
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in, long length) throws IOException {
+        final byte[] buf = new byte[BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            final int read = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (read < 0) {
+                throw new EOFException("unexpected end of stream, " + remaining + " bytes remaining");
+            }
+            digest.update(buf, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    static SftpATTRS statIfExists(ChannelSftp channelSftp, String path) throws SftpException {
+        try {
+            return channelSftp.stat(path);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    static String remotePath(String remoteDir, Path relative) {
+        final StringBuilder path = new StringBuilder(remoteDir);
+        for (Path name : relative) {
+            if (!name.toString().isEmpty()) {
+                path.append('/').append(name);
+            }
+        }
+        return path.toString();
+    }
+
+    static String remotePath(String remoteDir, String name) {
+        return remoteDir.endsWith("/") ? remoteDir + name : remoteDir + "/" + name;
+    }
+
+    static String remoteName(String remotePath) {
+        return remotePath.substring(remotePath.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Creates every missing segment of {@code path}, parents first.
+     */
+    private void mkdirs(ChannelSftp channelSftp, String path) throws SftpException {
+        final StringBuilder current = new StringBuilder(path.startsWith("/") ? "/" : "");
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (current.length() > 0 && current.charAt(current.length() - 1) != '/') {
+                current.append('/');
+            }
+            current.append(segment);
+            final String dir = current.toString();
+            if (statIfExists(channelSftp, dir) == null) {
+                channelSftp.mkdir(dir);
+                invalidate(dir);
+            }
+        }
+    }
+
+    private static TransferResult result(Path local, String remote, boolean transferred, long size, long start) {
+        return new TransferResult(local, remote,
+                transferred ? TransferResult.Status.TRANSFERRED : TransferResult.Status.SKIPPED,
+                transferred ? size : 0L, System.nanoTime() - start, null);
+    }
+
+    /**
+     * Hashes all bytes including the ones skipped for resume, so the whole file is read only once.
+     */
+    private static class ResumeInputStream extends FilterInputStream {
+
+        private final MessageDigest digest;
+        private long skipped = 0L;
+
+        private ResumeInputStream(InputStream in, MessageDigest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0 && digest != null) {
+                digest.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0 && digest != null) {
+                digest.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (digest == null) {
+                final long s = super.skip(n);
+                skipped += s;
+                return s;
+            }
+            final byte[] buf = new byte[BUFFER_SIZE];
+            long remaining = n;
+            while (remaining > 0) {
+                final int read = read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+            }
+            skipped += n - remaining;
+            return n - remaining;
+        }
+    }
+}
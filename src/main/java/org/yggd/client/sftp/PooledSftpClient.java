@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+
+import java.util.stream.Stream;
+
+/**
+ * Thread safe {@link SftpClient} lending pooled channels for each operation.
+ */
+public class PooledSftpClient extends AbstractSftpClient implements AutoCloseable {
+
+    private final SftpChannelPool pool;
+
+    PooledSftpClient(SftpChannelPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public SftpClient connect() {
+        pool.lease().close();
+        return this;
+    }
+
+    @Override
+    ChannelLease lease() {
+        return pool.lease();
+    }
+
+    @Override
+    ChannelLease listingLease() {
+        return pool.lease();
+    }
+
+    /**
+     * Requires at least two channels, the listing holds one while the caller uses the others.
+     */
+    @Override
+    public Stream<ChannelSftp.LsEntry> lsStream(String path) {
+        requireSpareChannel();
+        return super.lsStream(path);
+    }
+
+    /**
+     * Requires at least two channels, at most {@code getMaxChannels() - 1} are used by the listing.
+     */
+    @Override
+    public Stream<RemoteEntry> walk(String path) {
+        requireSpareChannel();
+        return super.walk(path);
+    }
+
+    @Override
+    int parallelism() {
+        return pool.getMaxChannels();
+    }
+
+    public int getMaxChannels() {
+        return pool.getMaxChannels();
+    }
+
+    public int getActiveChannels() {
+        return pool.getActiveChannels();
+    }
+
+    public int getIdleChannels() {
+        return pool.getIdleChannels();
+    }
+
+    public int getSessions() {
+        return pool.getSessions();
+    }
+
+    private void requireSpareChannel() {
+        if (pool.getMaxChannels() < 2) {
+            throw new IllegalStateException("listing streams need at least two pooled channels, max channels:"
+                    + pool.getMaxChannels());
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+
+public class RemoteEntry {
+
+    private final String path;
+    private final ChannelSftp.LsEntry entry;
+
+    RemoteEntry(String parent, ChannelSftp.LsEntry entry) {
+        this.path = AbstractSftpClient.remotePath(parent, entry.getFilename());
+        this.entry = entry;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getFilename() {
+        return entry.getFilename();
+    }
+
+    public SftpATTRS getAttrs() {
+        return entry.getAttrs();
+    }
+
+    public boolean isDirectory() {
+        return entry.getAttrs().isDir();
+    }
+
+    public ChannelSftp.LsEntry getEntry() {
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.SftpException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.jcraft.jsch.ChannelSftp.LsEntrySelector.BREAK;
+import static com.jcraft.jsch.ChannelSftp.LsEntrySelector.CONTINUE;
+
+/**
+ * Lists directories in the background and feeds their entries into a bounded queue as they are read, so memory
+ * stays bounded for huge directories. Producers hold channels from {@link AbstractSftpClient#listingLease()},
+ * kept apart from the caller's, so that the consumer can use the same client while iterating.
+ * Subdirectories are listed in parallel when recursive. Closing the listing stops the producers at their
+ * next entry and releases their channels.
+ */
+class RemoteListing implements Iterator<RemoteEntry>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final AbstractSftpClient client;
+    private final boolean recursive;
+    private final BlockingQueue<Object> queue;
+    private final ConcurrentLinkedQueue<ChannelLease> leases = new ConcurrentLinkedQueue<>();
+    private final ExecutorService executor;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicReference<RuntimeException> error = new AtomicReference<>();
+    private volatile boolean closed = false;
+    private Object next;
+
+    RemoteListing(AbstractSftpClient client, String root, boolean recursive, int threads, int capacity) {
+        this.client = client;
+        this.recursive = recursive;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = client.newExecutor(Math.max(1, threads), "sftp-listing");
+        submit(root);
+    }
+
+    Stream<RemoteEntry> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.NONNULL | Spliterator.DISTINCT), false).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = take();
+        }
+        if (next == END) {
+            final RuntimeException e = error.get();
+            if (e != null) {
+                throw e;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public RemoteEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final RemoteEntry current = (RemoteEntry) next;
+        next = null;
+        return current;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // no interrupt, producers stop by BREAK so that their channels stay usable.
+        executor.shutdown();
+        closeLeases();
+    }
+
+    private Object take() {
+        try {
+            final Object entry = queue.take();
+            if (entry == END) {
+                close();
+            }
+            return entry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void submit(String dir) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> list(dir));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void list(String dir) {
+        if (closed) {
+            return;
+        }
+        final ChannelLease lease;
+        try {
+            final ChannelLease reused = leases.poll();
+            lease = reused != null ? reused : client.listingLease();
+        } catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+        try {
+            lease.channel().ls(dir, entry -> {
+                final String name = entry.getFilename();
+                if (closed) {
+                    return BREAK;
+                }
+                if (".".equals(name) || "..".equals(name)) {
+                    return CONTINUE;
+                }
+                final RemoteEntry remoteEntry = new RemoteEntry(dir, entry);
+                if (recursive && remoteEntry.isDirectory() && !entry.getAttrs().isLink()) {
+                    submit(remoteEntry.getPath());
+                }
+                return offer(remoteEntry) ? CONTINUE : BREAK;
+            });
+        } catch (SftpException e) {
+            if (e.getCause() != null) {
+                lease.invalidate();
+            }
+            lease.close();
+            fail(new IllegalStateException(e));
+            return;
+        } catch (RuntimeException e) {
+            lease.invalidate();
+            lease.close();
+            fail(e);
+            return;
+        }
+        leases.offer(lease);
+        if (closed) {
+            closeLeases();
+        }
+        if (pending.decrementAndGet() == 0) {
+            if (!offer(END)) {
+                forceEnd();
+            }
+            closeLeases();
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        error.compareAndSet(null, e);
+        closed = true;
+        forceEnd();
+        closeLeases();
+    }
+
+    private void closeLeases() {
+        ChannelLease lease;
+        while ((lease = leases.poll()) != null) {
+            lease.close();
+        }
+    }
+
+    private boolean offer(Object entry) {
+        try {
+            while (!closed) {
+                if (queue.offer(entry, 100L, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void forceEnd() {
+        // the consumer may have stopped reading, make room for the end marker.
+        while (!queue.offer(END)) {
+            queue.poll();
+        }
+    }
+}
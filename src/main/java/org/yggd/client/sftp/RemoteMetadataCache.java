@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side cache of remote attributes and directory listings, bounded by TTL and entry count.
+ * Entries are keyed by the path as given to the client; the client's own writes invalidate them.
+ */
+public class RemoteMetadataCache {
+
+    private final long ttlNanos;
+    private final Map<Key, CacheEntry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    RemoteMetadataCache(long ttl, TimeUnit unit, int maxEntries) {
+        if (ttl <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("ttl and maxEntries must be positive.");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return null if not cached, an empty Optional if the path is cached as missing.
+     */
+    Optional<SftpATTRS> getStat(String path) {
+        final CacheEntry entry = get(new Key(false, normalize(path)));
+        return entry == null ? null : entry.stat;
+    }
+
+    void putStat(String path, SftpATTRS attrs) {
+        put(new Key(false, normalize(path)), new CacheEntry(Optional.ofNullable(attrs), null, expiresAt()));
+    }
+
+    List<ChannelSftp.LsEntry> getListing(String path) {
+        final CacheEntry entry = get(new Key(true, normalize(path)));
+        return entry == null ? null : entry.listing;
+    }
+
+    void putListing(String path, List<ChannelSftp.LsEntry> listing) {
+        put(new Key(true, normalize(path)), new CacheEntry(null, Collections.unmodifiableList(listing), expiresAt()));
+    }
+
+    /**
+     * Drops the attributes and listing of the path, and the listing of its parent.
+     */
+    public void invalidate(String path) {
+        final String normalized = normalize(path);
+        synchronized (entries) {
+            entries.remove(new Key(false, normalized));
+            entries.remove(new Key(true, normalized));
+            entries.remove(new Key(true, parent(normalized)));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private CacheEntry get(Key key) {
+        final long now = System.nanoTime();
+        synchronized (entries) {
+            final CacheEntry entry = entries.get(key);
+            if (entry != null && now - entry.expiresAt < 0) {
+                hits.increment();
+                return entry;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void put(Key key, CacheEntry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private long expiresAt() {
+        return System.nanoTime() + ttlNanos;
+    }
+
+    static String normalize(String path) {
+        final StringBuilder sb = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(segment);
+        }
+        final boolean absolute = path.startsWith("/");
+        if (sb.length() == 0) {
+            return absolute ? "/" : ".";
+        }
+        return absolute ? "/" + sb : sb.toString();
+    }
+
+    static String parent(String normalized) {
+        final int index = normalized.lastIndexOf('/');
+        if (index < 0) {
+            return ".";
+        }
+        return index == 0 ? "/" : normalized.substring(0, index);
+    }
+
+    private static final class Key {
+
+        private final boolean listing;
+        private final String path;
+
+        private Key(boolean listing, String path) {
+            this.listing = listing;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return listing == other.listing && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + (listing ? 1 : 0);
+        }
+    }
+
+    private static final class CacheEntry {
+
+        // stat entries hold the attributes, listing entries the listing.
+        private final Optional<SftpATTRS> stat;
+        private final List<ChannelSftp.LsEntry> listing;
+        private final long expiresAt;
+
+        private CacheEntry(Optional<SftpATTRS> stat, List<ChannelSftp.LsEntry> listing, long expiresAt) {
+            this.stat = stat;
+            this.listing = listing;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of authenticated sessions and their sftp channels.
+ * Idle channels are reused last-in first-out and validated when borrowed.
+ */
+class SftpChannelPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SftpChannelPool.class);
+
+    private final Supplier<Session> sessionFactory;
+    private final int maxSessions;
+    private final int channelsPerSession;
+    private final long borrowTimeoutMillis;
+
+    private final Semaphore permits;
+    private final BlockingDeque<ChannelSftp> idle = new LinkedBlockingDeque<>();
+    // guarded by sessions, channel counts include channels being opened.
+    private final Map<Session, Integer> sessions = new IdentityHashMap<>();
+    private final Map<ChannelSftp, Session> owners = new IdentityHashMap<>();
+    private int connectingSessions = 0;
+    private volatile boolean closed = false;
+
+    SftpChannelPool(Supplier<Session> sessionFactory, int maxSessions, int channelsPerSession, long borrowTimeoutMillis) {
+        if (maxSessions <= 0 || channelsPerSession <= 0) {
+            throw new IllegalArgumentException("maxSessions and channelsPerSession must be positive.");
+        }
+        this.sessionFactory = sessionFactory;
+        this.maxSessions = maxSessions;
+        this.channelsPerSession = channelsPerSession;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.permits = new Semaphore(maxSessions * channelsPerSession, true);
+    }
+
+    int getMaxChannels() {
+        return maxSessions * channelsPerSession;
+    }
+
+    int getIdleChannels() {
+        return idle.size();
+    }
+
+    int getActiveChannels() {
+        return getMaxChannels() - permits.availablePermits();
+    }
+
+    int getSessions() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    ChannelLease lease() {
+        final ChannelSftp channel = borrow();
+        return new ChannelLease() {
+            private boolean valid = true;
+            private boolean released = false;
+
+            @Override
+            public ChannelSftp channel() {
+                return channel;
+            }
+
+            @Override
+            public void invalidate() {
+                valid = false;
+            }
+
+            @Override
+            public void close() {
+                if (!released) {
+                    released = true;
+                    release(channel, valid);
+                }
+            }
+        };
+    }
+
+    ChannelSftp borrow() {
+        if (closed) {
+            throw new IllegalStateException("sftp channel pool is closed.");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("timeout waiting for sftp channel:" + borrowTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        try {
+            ChannelSftp channel;
+            while ((channel = idle.pollFirst()) != null) {
+                if (isValid(channel)) {
+                    return channel;
+                }
+                destroy(channel);
+            }
+            return create();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(ChannelSftp channel, boolean valid) {
+        try {
+            if (!closed && valid && isValid(channel)) {
+                idle.offerFirst(channel);
+            } else {
+                destroy(channel);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ChannelSftp channel;
+        while ((channel = idle.pollFirst()) != null) {
+            destroy(channel);
+        }
+        final List<Session> all;
+        synchronized (sessions) {
+            all = new ArrayList<>(sessions.keySet());
+            sessions.clear();
+        }
+        all.forEach(Session::disconnect);
+    }
+
+    private ChannelSftp create() {
+        // slots are reserved under the lock, connecting and authenticating happen outside of it.
+        Session session = null;
+        synchronized (sessions) {
+            while (session == null) {
+                for (Map.Entry<Session, Integer> e : sessions.entrySet()) {
+                    if (e.getValue() < channelsPerSession && e.getKey().isConnected()) {
+                        session = e.getKey();
+                        break;
+                    }
+                }
+                if (session != null) {
+                    sessions.merge(session, 1, Integer::sum);
+                } else if (connectingSessions > 0) {
+                    // fill the session being connected before opening another one.
+                    awaitSession();
+                } else {
+                    if (sessions.size() >= maxSessions) {
+                        evictDeadSessions();
+                    }
+                    if (sessions.size() >= maxSessions) {
+                        throw new IllegalStateException("no sftp session available, max sessions:" + maxSessions);
+                    }
+                    connectingSessions++;
+                    break;
+                }
+            }
+        }
+        if (session == null) {
+            session = connectSession();
+        }
+        try {
+            final ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+            channel.connect();
+            synchronized (sessions) {
+                owners.put(channel, session);
+            }
+            return channel;
+        } catch (JSchException e) {
+            synchronized (sessions) {
+                final Integer count = sessions.computeIfPresent(session, (s, c) -> c - 1);
+                if (count != null && count <= 0) {
+                    sessions.remove(session);
+                    session.disconnect();
+                }
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Session connectSession() {
+        final Session session;
+        try {
+            session = sessionFactory.get();
+        } catch (RuntimeException e) {
+            synchronized (sessions) {
+                connectingSessions--;
+                sessions.notifyAll();
+            }
+            throw e;
+        }
+        synchronized (sessions) {
+            connectingSessions--;
+            sessions.notifyAll();
+            if (!closed) {
+                sessions.put(session, 1);
+                return session;
+            }
+        }
+        session.disconnect();
+        throw new IllegalStateException("sftp channel pool is closed.");
+    }
+
+    private void awaitSession() {
+        try {
+            sessions.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void destroy(ChannelSftp channel) {
+        channel.disconnect();
+        synchronized (sessions) {
+            final Session session = owners.remove(channel);
+            if (session == null) {
+                return;
+            }
+            final Integer count = sessions.computeIfPresent(session, (s, c) -> c - 1);
+            if (count != null && count <= 0 && (closed || !session.isConnected())) {
+                sessions.remove(session);
+                session.disconnect();
+            }
+        }
+    }
+
+    private void evictDeadSessions() {
+        sessions.entrySet().removeIf(e -> {
+            if (!e.getKey().isConnected() && e.getValue() <= 0) {
+                logger.debug("evict disconnected sftp session.");
+                e.getKey().disconnect();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private boolean isValid(ChannelSftp channel) {
+        if (!channel.isConnected() || channel.isClosed()) {
+            return false;
+        }
+        synchronized (sessions) {
+            final Session session = owners.get(channel);
+            return session != null && session.isConnected();
+        }
+    }
+}
@@ -16,26 +16,52 @@
 package org.yggd.client.sftp;
 
 import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import org.yggd.client.TransferResult;
+import org.yggd.client.TransferSummary;
 
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public interface SftpClient {
 
     SftpClient connect();
     void ls(String path, Consumer<ChannelSftp.LsEntry> c);
     List<ChannelSftp.LsEntry> lsMatch(String path, Predicate<ChannelSftp.LsEntry> p);
+    Stream<ChannelSftp.LsEntry> lsStream(String path);
+    Stream<RemoteEntry> walk(String path);
+
+    SftpATTRS stat(String path);
+    boolean exists(String path);
+    void rm(String path);
 
     void put(File f);
     void put(String fileName);
+    void put(String fileName, TransferListener listener);
     void put(String fileName, InputStream inputStream);
+    void put(String fileName, InputStream inputStream, TransferListener listener);
 
     InputStream get(String fileName);
     void get(String fileName, OutputStream outputStream);
+    void get(String fileName, OutputStream outputStream, TransferListener listener);
+    TransferResult getSegmented(String remoteFile, Path localFile, int segments);
+
+    TransferResult putResumable(Path localFile, String remoteFile, String checksumAlgorithm);
+    TransferResult getResumable(String remoteFile, Path localFile, String checksumAlgorithm);
+
+    TransferSummary putAll(Collection<Path> localFiles, String remoteDir);
+    TransferSummary getAll(Collection<String> remoteFiles, Path localDir);
+    TransferSummary sync(Path localDir, String remoteDir);
+
+    SftpClientMetrics getMetrics();
+    RemoteMetadataCache getMetadataCache();
 
     void disconnect();
 }
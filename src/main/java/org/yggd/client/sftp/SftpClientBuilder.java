@@ -20,12 +20,14 @@ import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 import org.springframework.core.io.Resource;
+import org.yggd.runtime.EmbeddedRuntime;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class SftpClientBuilder {
 
@@ -39,7 +41,12 @@ public class SftpClientBuilder {
 
     private File privateKey;
 
-    private SftpClient client;
+    private int maxSessions = 1;
+    private int channelsPerSession = 4;
+    private long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private long metadataCacheTtlMillis = 0L;
+    private int metadataCacheMaxEntries = 0;
+    private EmbeddedRuntime runtime;
 
     public SftpClientBuilder(String host, int port) {
         this.host = host;
@@ -91,10 +98,59 @@ public class SftpClientBuilder {
         return this;
     }
 
+    public SftpClientBuilder maxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+        return this;
+    }
+
+    public SftpClientBuilder channelsPerSession(int channelsPerSession) {
+        this.channelsPerSession = channelsPerSession;
+        return this;
+    }
+
+    public SftpClientBuilder borrowTimeout(long timeout, TimeUnit timeUnit) {
+        this.borrowTimeoutMillis = timeUnit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Caches stat results and directory listings on the client for the given TTL.
+     */
+    public SftpClientBuilder metadataCache(long ttl, TimeUnit timeUnit, int maxEntries) {
+        this.metadataCacheTtlMillis = timeUnit.toMillis(ttl);
+        this.metadataCacheMaxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Runs parallel transfers and listings on the runtime's shared pool.
+     */
+    public SftpClientBuilder runtime(EmbeddedRuntime runtime) {
+        this.runtime = runtime;
+        return this;
+    }
+
+    public PooledSftpClient buildPooled() {
+        final PooledSftpClient client = new PooledSftpClient(new SftpChannelPool(this::createSession, maxSessions,
+                channelsPerSession, borrowTimeoutMillis));
+        return configure(client);
+    }
+
     public SftpClientImpl build() {
         final Session session = createSession();
         assert session != null;
-        return new SftpClientImpl(session, createChannel(session));
+        return configure(new SftpClientImpl(session, createChannel(session)));
+    }
+
+    private <T extends AbstractSftpClient> T configure(T client) {
+        if (metadataCacheTtlMillis > 0) {
+            client.metadataCache(new RemoteMetadataCache(metadataCacheTtlMillis, TimeUnit.MILLISECONDS,
+                    metadataCacheMaxEntries));
+        }
+        if (runtime != null) {
+            client.runtime(runtime);
+        }
+        return client;
     }
 
     private Session createSession() {
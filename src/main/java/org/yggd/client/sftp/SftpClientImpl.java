@@ -18,21 +18,19 @@ package org.yggd.client.sftp;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
-import com.jcraft.jsch.SftpException;
 
-import java.io.File;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static com.jcraft.jsch.ChannelSftp.LsEntrySelector.CONTINUE;
-
-public class SftpClientImpl implements SftpClient, AutoCloseable {
+/**
+ * {@link SftpClient} on a single channel, operations take turns on it. Background listings open their own
+ * channel on the same session for as long as they run.
+ */
+public class SftpClientImpl extends AbstractSftpClient implements AutoCloseable {
 
     private final Session session;
+    // released by whichever thread closes the lease, e.g. the stream returned by get(String).
+    private final Semaphore turn = new Semaphore(1);
     private ChannelSftp channelSftp;
 
     SftpClientImpl(Session session, ChannelSftp channelSftp) {
@@ -42,79 +40,75 @@ public class SftpClientImpl implements SftpClient, AutoCloseable {
 
     @Override
     public SftpClient connect() {
-        try {
-            session.connect();
-            channelSftp = (ChannelSftp) session.openChannel("sftp");
-        } catch (JSchException e) {
-            throw new IllegalStateException(e);
+        synchronized (this) {
+            try {
+                if (!session.isConnected()) {
+                    session.connect();
+                }
+                if (channelSftp == null || !channelSftp.isConnected()) {
+                    channelSftp = (ChannelSftp) session.openChannel("sftp");
+                    channelSftp.connect();
+                }
+            } catch (JSchException e) {
+                throw new IllegalStateException(e);
+            }
         }
         return this;
     }
 
     @Override
-    public void ls(String path, Consumer<ChannelSftp.LsEntry> c) {
-        try {
-            channelSftp.ls(path).forEach( e -> c.accept((ChannelSftp.LsEntry) e));
-        } catch (SftpException e) {
-            throw new IllegalStateException(e);
-        }
-    }
-
-    @Override
-    public List<ChannelSftp.LsEntry> lsMatch(String path,final Predicate<ChannelSftp.LsEntry> p) {
-        final List<ChannelSftp.LsEntry> list = new ArrayList<>();
-        try {
-            channelSftp.ls(path, entry -> {
-                if (p.test(entry)) {
-                    list.add(entry);
-                }
-                return CONTINUE;
-            });
-        } catch (SftpException e) {
-            throw new IllegalStateException(e);
-        }
-        return list;
-    }
+    ChannelLease lease() {
+        turn.acquireUninterruptibly();
+        final ChannelSftp leased = channelSftp;
+        final AtomicBoolean released = new AtomicBoolean();
+        return new ChannelLease() {
+            @Override
+            public ChannelSftp channel() {
+                return leased;
+            }
 
-    @Override
-    public void put(File f) {
-        put(f.getAbsolutePath());
-    }
+            @Override
+            public void invalidate() {
+                // single channel, reconnect by connect().
+            }
 
-    @Override
-    public void put(String fileName) {
-        try {
-            channelSftp.put(fileName);
-        } catch (SftpException e) {
-            throw new IllegalStateException(e);
-        }
+            @Override
+            public void close() {
+                // single channel, kept until disconnect.
+                if (released.compareAndSet(false, true)) {
+                    turn.release();
+                }
+            }
+        };
     }
 
     @Override
-    public void put(String fileName, InputStream inputStream) {
-        try {
-            channelSftp.put(inputStream, fileName);
-        } catch (SftpException e) {
-            throw new IllegalStateException(e);
+    ChannelLease listingLease() {
+        final ChannelSftp listing;
+        synchronized (this) {
+            try {
+                listing = (ChannelSftp) session.openChannel("sftp");
+                listing.connect();
+            } catch (JSchException e) {
+                throw new IllegalStateException(e);
+            }
         }
-    }
+        return new ChannelLease() {
+            @Override
+            public ChannelSftp channel() {
+                return listing;
+            }
 
-    @Override
-    public InputStream get(String fileName) {
-        try {
-            return channelSftp.get(fileName);
-        } catch (SftpException e) {
-            throw new IllegalStateException(e);
-        }
-    }
+            @Override
+            public void invalidate() {
+                // never reused.
+            }
 
-    @Override
-    public void get(String fileName, OutputStream outputStream) {
-        try {
-            channelSftp.get(fileName, outputStream);
-        } catch (SftpException e) {
-            throw new IllegalStateException(e);
-        }
+            @Override
+            public void close() {
+                listing.disconnect();
+            }
+        };
     }
 
     @Override
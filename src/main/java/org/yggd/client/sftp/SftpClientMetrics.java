@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import org.yggd.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-wide transfer counters and latency histograms.
+ */
+public class SftpClientMetrics {
+
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder gets = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesUploaded = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+
+    void record(TransferProgress progress, boolean success) {
+        if (!success) {
+            failures.increment();
+        }
+        final long nanos = progress.getElapsed(TimeUnit.NANOSECONDS);
+        if (progress.getDirection() == TransferProgress.Direction.PUT) {
+            puts.increment();
+            bytesUploaded.add(progress.getBytesTransferred());
+            putLatency.record(nanos);
+        } else {
+            gets.increment();
+            bytesDownloaded.add(progress.getBytesTransferred());
+            getLatency.record(nanos);
+        }
+        final long ttfb = progress.getTimeToFirstByte(TimeUnit.NANOSECONDS);
+        if (ttfb >= 0) {
+            timeToFirstByte.record(ttfb);
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public static class Snapshot {
+
+        private final long puts;
+        private final long gets;
+        private final long failures;
+        private final long bytesUploaded;
+        private final long bytesDownloaded;
+        private final LatencyHistogram.Snapshot putLatency;
+        private final LatencyHistogram.Snapshot getLatency;
+        private final LatencyHistogram.Snapshot timeToFirstByte;
+
+        private Snapshot(SftpClientMetrics metrics) {
+            this.puts = metrics.puts.sum();
+            this.gets = metrics.gets.sum();
+            this.failures = metrics.failures.sum();
+            this.bytesUploaded = metrics.bytesUploaded.sum();
+            this.bytesDownloaded = metrics.bytesDownloaded.sum();
+            this.putLatency = metrics.putLatency.snapshot();
+            this.getLatency = metrics.getLatency.snapshot();
+            this.timeToFirstByte = metrics.timeToFirstByte.snapshot();
+        }
+
+        public long getPuts() {
+            return puts;
+        }
+
+        public long getGets() {
+            return gets;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getBytesUploaded() {
+            return bytesUploaded;
+        }
+
+        public long getBytesDownloaded() {
+            return bytesDownloaded;
+        }
+
+        public LatencyHistogram.Snapshot getPutLatency() {
+            return putLatency;
+        }
+
+        public LatencyHistogram.Snapshot getGetLatency() {
+            return getLatency;
+        }
+
+        public LatencyHistogram.Snapshot getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+    }
+}
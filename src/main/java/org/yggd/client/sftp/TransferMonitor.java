@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import com.jcraft.jsch.SftpProgressMonitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridges JSch progress callbacks to {@link TransferListener} and {@link SftpClientMetrics}.
+ */
+class TransferMonitor implements SftpProgressMonitor {
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final TransferProgress.Direction direction;
+    private final SftpClientMetrics metrics;
+    private final TransferListener listener;
+
+    private String source;
+    private String destination;
+    private long totalBytes = -1L;
+    private long bytes = 0L;
+    private long startNanos;
+    private long firstByteNanos = -1L;
+    private long windowStartNanos;
+    private long windowBytes = 0L;
+    private double instantaneous = 0d;
+    private boolean finished = false;
+
+    TransferMonitor(TransferProgress.Direction direction, SftpClientMetrics metrics, TransferListener listener) {
+        this.direction = direction;
+        this.metrics = metrics;
+        this.listener = listener;
+        this.startNanos = System.nanoTime();
+        this.windowStartNanos = startNanos;
+    }
+
+    @Override
+    public void init(int op, String src, String dest, long max) {
+        this.source = src;
+        this.destination = dest;
+        this.totalBytes = max == UNKNOWN_SIZE ? -1L : max;
+        this.startNanos = System.nanoTime();
+        this.windowStartNanos = startNanos;
+        if (listener != null) {
+            listener.started(progress(startNanos));
+        }
+    }
+
+    @Override
+    public boolean count(long count) {
+        final long now = System.nanoTime();
+        if (firstByteNanos < 0 && count > 0) {
+            firstByteNanos = now - startNanos;
+        }
+        bytes += count;
+        windowBytes += count;
+        final long window = now - windowStartNanos;
+        if (window >= REPORT_INTERVAL_NANOS) {
+            instantaneous = windowBytes * (double) TimeUnit.SECONDS.toNanos(1) / window;
+            windowStartNanos = now;
+            windowBytes = 0L;
+            if (listener != null) {
+                listener.progress(progress(now));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void end() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        final TransferProgress progress = progress(System.nanoTime());
+        metrics.record(progress, true);
+        if (listener != null) {
+            listener.completed(progress);
+        }
+    }
+
+    void failed(Throwable cause) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        final TransferProgress progress = progress(System.nanoTime());
+        metrics.record(progress, false);
+        if (listener != null) {
+            listener.failed(progress, cause);
+        }
+    }
+
+    private TransferProgress progress(long now) {
+        if (finished && windowBytes > 0 && now > windowStartNanos) {
+            instantaneous = windowBytes * (double) TimeUnit.SECONDS.toNanos(1) / (now - windowStartNanos);
+        }
+        return new TransferProgress(direction, source, destination, totalBytes, bytes, now - startNanos,
+                firstByteNanos, instantaneous);
+    }
+}
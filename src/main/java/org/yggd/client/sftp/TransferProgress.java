@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.client.sftp;
+
+import java.util.concurrent.TimeUnit;
+
+public class TransferProgress {
+
+    public enum Direction {
+        PUT, GET
+    }
+
+    private static final double MEGABYTE = 1024d * 1024d;
+
+    private final Direction direction;
+    private final String source;
+    private final String destination;
+    private final long totalBytes;
+    private final long bytesTransferred;
+    private final long elapsedNanos;
+    private final long timeToFirstByteNanos;
+    private final double instantaneousBytesPerSecond;
+
+    TransferProgress(Direction direction, String source, String destination, long totalBytes, long bytesTransferred,
+                     long elapsedNanos, long timeToFirstByteNanos, double instantaneousBytesPerSecond) {
+        this.direction = direction;
+        this.source = source;
+        this.destination = destination;
+        this.totalBytes = totalBytes;
+        this.bytesTransferred = bytesTransferred;
+        this.elapsedNanos = elapsedNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.instantaneousBytesPerSecond = instantaneousBytesPerSecond;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Total size if known by the transfer, otherwise -1.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time from the start of the transfer to the first transferred byte, -1 if nothing is transferred yet.
+     */
+    public long getTimeToFirstByte(TimeUnit unit) {
+        return timeToFirstByteNanos < 0 ? -1L : unit.convert(timeToFirstByteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getInstantaneousMBps() {
+        return instantaneousBytesPerSecond / MEGABYTE;
+    }
+
+    public double getAverageMBps() {
+        if (elapsedNanos <= 0) {
+            return 0d;
+        }
+        return bytesTransferred / MEGABYTE / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return direction + " " + source + " -> " + destination + ": " + bytesTransferred
+                + (totalBytes >= 0 ? "/" + totalBytes : "") + " bytes"
+                + String.format(", %.2f MB/s (avg %.2f MB/s)", getInstantaneousMBps(), getAverageMBps());
+    }
+}
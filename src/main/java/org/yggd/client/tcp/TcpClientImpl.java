@@ -25,6 +25,7 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.yggd.runtime.EmbeddedRuntime;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -34,9 +35,23 @@ import java.util.concurrent.TimeUnit;
 public class TcpClientImpl implements TcpClient {
 
     private final Bootstrap bootStrap = new Bootstrap();
-    private final EventLoopGroup group = new NioEventLoopGroup();
+    private final EventLoopGroup group;
+    private final boolean sharedGroup;
     private int timeout = -1;
 
+    public TcpClientImpl() {
+        this.group = new NioEventLoopGroup();
+        this.sharedGroup = false;
+    }
+
+    /**
+     * Uses the runtime's event loops, which are kept open after exchange() so the client can be reused.
+     */
+    public TcpClientImpl(EmbeddedRuntime runtime) {
+        this.group = runtime.eventLoopGroup();
+        this.sharedGroup = true;
+    }
+
     @Override
     public TcpClient connect(String host, int port) {
         this.bootStrap.group(group)
@@ -71,10 +86,12 @@ public class TcpClientImpl implements TcpClient {
         } catch (InterruptedException e) {
             // do nothing.
         } finally {
-            try {
-                group.shutdownGracefully().sync();
-            } catch (InterruptedException e) {
-                // do nothing.
+            if (!sharedGroup) {
+                try {
+                    group.shutdownGracefully().sync();
+                } catch (InterruptedException e) {
+                    // do nothing.
+                }
             }
         }
         return inboundHandler.response();
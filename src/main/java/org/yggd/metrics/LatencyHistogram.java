@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        final long value = Math.max(0L, nanos);
+        buckets[bucketOf(value)].increment();
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        final long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = buckets[i].sum();
+        }
+        return new Snapshot(values, count.sum(), totalNanos.sum(), maxNanos.get());
+    }
+
+    private static int bucketOf(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    public static class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Combined distribution of both snapshots.
+         */
+        public Snapshot plus(Snapshot other) {
+            final long[] values = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                values[i] = buckets[i] + other.buckets[i];
+            }
+            return new Snapshot(values, count + other.count, totalNanos + other.totalNanos,
+                    Math.max(maxNanos, other.maxNanos));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal(TimeUnit unit) {
+            return unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public long getMax(TimeUnit unit) {
+            return unit.convert(maxNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public double getMean(TimeUnit unit) {
+            if (count == 0) {
+                return 0d;
+            }
+            return (double) totalNanos / count / TimeUnit.NANOSECONDS.convert(1, unit);
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile (0.0 - 100.0).
+         */
+        public long getPercentile(double percentile, TimeUnit unit) {
+            if (count == 0) {
+                return 0L;
+            }
+            final long rank = (long) Math.ceil(count * Math.min(100d, Math.max(0d, percentile)) / 100d);
+            long seen = 0L;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(1L, rank)) {
+                    final long upper = i == 0 ? 0L : (1L << i) - 1;
+                    return unit.convert(Math.min(upper, maxNanos), TimeUnit.NANOSECONDS);
+                }
+            }
+            return getMax(unit);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + ", mean=" + String.format("%.3f", getMean(TimeUnit.MICROSECONDS)) + "us"
+                    + ", p50=" + getPercentile(50d, TimeUnit.MICROSECONDS) + "us"
+                    + ", p99=" + getPercentile(99d, TimeUnit.MICROSECONDS) + "us"
+                    + ", max=" + getMax(TimeUnit.MICROSECONDS) + "us";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named server metrics to export together, e.g. FTP, SFTP and TCP servers in one dashboard.
+ */
+public class MetricsRegistry implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private final Map<String, ServerMetrics> metrics = new LinkedHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public synchronized MetricsRegistry register(String name, ServerMetrics serverMetrics) {
+        metrics.put(name, serverMetrics);
+        return this;
+    }
+
+    public synchronized MetricsRegistry unregister(String name) {
+        metrics.remove(name);
+        return this;
+    }
+
+    public synchronized Map<String, ServerMetrics.Snapshot> snapshots() {
+        final Map<String, ServerMetrics.Snapshot> snapshots = new LinkedHashMap<>();
+        metrics.forEach((name, m) -> snapshots.put(name, m.snapshot()));
+        return snapshots;
+    }
+
+    public void export(MetricsExporter exporter) throws IOException {
+        exporter.export(snapshots());
+    }
+
+    /**
+     * Exports periodically on a daemon thread until {@link #close()}. Failures are logged and retried next period.
+     */
+    public synchronized void schedule(MetricsExporter exporter, long period, TimeUnit unit) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "metrics-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                export(exporter);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("metrics export failed.", e);
+            }
+        }, 0L, period, unit);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Prometheus text exposition format (0.0.4) of {@link ServerMetrics}, as a file or a local HTTP endpoint.
+ */
+public final class PrometheusExporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5d, 0.9d, 0.99d};
+
+    private PrometheusExporter() {}
+
+    public static String format(Map<String, ServerMetrics.Snapshot> snapshots) {
+        final StringBuilder out = new StringBuilder();
+        gauge(out, "embedded_server_connections_active", "Open client connections.", snapshots,
+                ServerMetrics.Snapshot::getActiveConnections);
+        counter(out, "embedded_server_connections_total", "Accepted client connections.", snapshots,
+                ServerMetrics.Snapshot::getTotalConnections);
+        counter(out, "embedded_server_received_bytes_total", "Bytes received from clients.", snapshots,
+                ServerMetrics.Snapshot::getBytesReceived);
+        counter(out, "embedded_server_sent_bytes_total", "Bytes sent to clients.", snapshots,
+                ServerMetrics.Snapshot::getBytesSent);
+        counter(out, "embedded_server_operations_total", "Completed operations.", snapshots,
+                ServerMetrics.Snapshot::getOperations);
+        gauge(out, "embedded_server_operations_in_flight", "Operations in progress.", snapshots,
+                ServerMetrics.Snapshot::getInFlightOperations);
+        counter(out, "embedded_server_errors_total", "Failed operations and connection errors.", snapshots,
+                ServerMetrics.Snapshot::getErrors);
+
+        final String latency = "embedded_server_operation_duration_seconds";
+        header(out, latency, "Operation latency, quantiles are bucket upper bounds.", "summary");
+        snapshots.forEach((name, s) -> {
+            final LatencyHistogram.Snapshot histogram = s.getLatency();
+            for (double quantile : QUANTILES) {
+                sample(out, latency, labels(name, s) + ",quantile=\"" + quantile + "\"",
+                        seconds(histogram.getPercentile(quantile * 100d, TimeUnit.NANOSECONDS)));
+            }
+            sample(out, latency + "_sum", labels(name, s), seconds(histogram.getTotal(TimeUnit.NANOSECONDS)));
+            sample(out, latency + "_count", labels(name, s), String.valueOf(histogram.getCount()));
+        });
+        return out.toString();
+    }
+
+    /**
+     * Writes the text format to a file, replacing it atomically so that e.g. a textfile collector never reads a partial file.
+     */
+    public static MetricsExporter file(Path path) {
+        return snapshots -> {
+            final Path absolute = path.toAbsolutePath();
+            final Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, format(snapshots).getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        };
+    }
+
+    /**
+     * Serves the registry on {@code GET /metrics}. Use port 0 for an ephemeral port.
+     */
+    public static HttpEndpoint serve(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+        final HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                final byte[] body = format(registry.snapshots()).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return new HttpEndpoint(server);
+    }
+
+    public static class HttpEndpoint implements Closeable {
+
+        private final HttpServer server;
+
+        private HttpEndpoint(HttpServer server) {
+            this.server = server;
+        }
+
+        public InetSocketAddress getAddress() {
+            return server.getAddress();
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+
+    private static void gauge(StringBuilder out, String metric, String help, Map<String, ServerMetrics.Snapshot> snapshots,
+                              ToLongFunction<ServerMetrics.Snapshot> value) {
+        header(out, metric, help, "gauge");
+        snapshots.forEach((name, s) -> sample(out, metric, labels(name, s), String.valueOf(value.applyAsLong(s))));
+    }
+
+    private static void counter(StringBuilder out, String metric, String help, Map<String, ServerMetrics.Snapshot> snapshots,
+                                ToLongFunction<ServerMetrics.Snapshot> value) {
+        header(out, metric, help, "counter");
+        snapshots.forEach((name, s) -> sample(out, metric, labels(name, s), String.valueOf(value.applyAsLong(s))));
+    }
+
+    private static void header(StringBuilder out, String metric, String help, String type) {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String metric, String labels, String value) {
+        out.append(metric).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String labels(String name, ServerMetrics.Snapshot snapshot) {
+        return "server=\"" + escape(name) + "\",protocol=\"" + escape(snapshot.getProtocol()) + "\"";
+    }
+
+    private static String seconds(long nanos) {
+        return String.valueOf(nanos / 1e9d);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Protocol-neutral server metrics: connections, bytes, operations and errors.
+ * Recording only touches striped counters and a lock-free histogram, so it stays on for every server.
+ * "received" means bytes sent by clients into the server, "sent" means bytes the server sent to clients.
+ */
+public class ServerMetrics {
+
+    private final String protocol;
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public ServerMetrics(String protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Sums the given metrics on every read, e.g. the servers of a group. The protocol is the members' if they
+     * all share one, "mixed" otherwise.
+     */
+    public static ServerMetrics sum(Collection<ServerMetrics> members) {
+        final List<ServerMetrics> copy = new ArrayList<>(members);
+        final long protocols = copy.stream().map(ServerMetrics::getProtocol).distinct().count();
+        return new ServerMetrics(protocols == 1 ? copy.get(0).getProtocol() : "mixed") {
+            @Override
+            public long getInFlightOperations() {
+                return super.getInFlightOperations()
+                        + copy.stream().mapToLong(ServerMetrics::getInFlightOperations).sum();
+            }
+
+            @Override
+            public Snapshot snapshot() {
+                Snapshot snapshot = super.snapshot();
+                for (ServerMetrics member : copy) {
+                    snapshot = snapshot.plus(member.snapshot());
+                }
+                return snapshot;
+            }
+        };
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public void connectionOpened() {
+        activeConnections.increment();
+        totalConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public void bytesReceived(long bytes) {
+        if (bytes > 0L) {
+            bytesReceived.add(bytes);
+        }
+    }
+
+    public void bytesSent(long bytes) {
+        if (bytes > 0L) {
+            bytesSent.add(bytes);
+        }
+    }
+
+    public void operationStarted() {
+        inFlight.increment();
+    }
+
+    /**
+     * Completes an operation begun with {@link #operationStarted()}.
+     */
+    public void operation(long nanos) {
+        inFlight.decrement();
+        operations.increment();
+        latency.record(nanos);
+    }
+
+    /**
+     * Ends an operation begun with {@link #operationStarted()} that never completed, e.g. its connection was closed.
+     */
+    public void operationAborted() {
+        inFlight.decrement();
+        errors.increment();
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    public long getInFlightOperations() {
+        return inFlight.sum();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public static class Snapshot {
+
+        private final String protocol;
+        private final long activeConnections;
+        private final long totalConnections;
+        private final long bytesReceived;
+        private final long bytesSent;
+        private final long operations;
+        private final long inFlightOperations;
+        private final long errors;
+        private final LatencyHistogram.Snapshot latency;
+
+        private Snapshot(ServerMetrics metrics) {
+            this.protocol = metrics.protocol;
+            this.activeConnections = metrics.activeConnections.sum();
+            this.totalConnections = metrics.totalConnections.sum();
+            this.bytesReceived = metrics.bytesReceived.sum();
+            this.bytesSent = metrics.bytesSent.sum();
+            this.operations = metrics.operations.sum();
+            this.inFlightOperations = metrics.inFlight.sum();
+            this.errors = metrics.errors.sum();
+            this.latency = metrics.latency.snapshot();
+        }
+
+        private Snapshot(Snapshot a, Snapshot b) {
+            this.protocol = a.protocol;
+            this.activeConnections = a.activeConnections + b.activeConnections;
+            this.totalConnections = a.totalConnections + b.totalConnections;
+            this.bytesReceived = a.bytesReceived + b.bytesReceived;
+            this.bytesSent = a.bytesSent + b.bytesSent;
+            this.operations = a.operations + b.operations;
+            this.inFlightOperations = a.inFlightOperations + b.inFlightOperations;
+            this.errors = a.errors + b.errors;
+            this.latency = a.latency.plus(b.latency);
+        }
+
+        /**
+         * Sum of both snapshots, with this snapshot's protocol.
+         */
+        public Snapshot plus(Snapshot other) {
+            return new Snapshot(this, other);
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        public long getActiveConnections() {
+            return activeConnections;
+        }
+
+        public long getTotalConnections() {
+            return totalConnections;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getInFlightOperations() {
+            return inFlightOperations;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.runtime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most {@code parallelism} tasks at once on a shared executor, queueing the rest.
+ */
+class BoundedExecutor extends AbstractExecutorService {
+
+    private final Executor delegate;
+    private final int parallelism;
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private int running = 0;
+    private boolean shutdown = false;
+
+    BoundedExecutor(Executor delegate, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.delegate = delegate;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public synchronized void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor is shut down.");
+        }
+        queue.add(command);
+        drain();
+    }
+
+    private synchronized void drain() {
+        while (running < parallelism && !queue.isEmpty()) {
+            final Runnable command = queue.poll();
+            running++;
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        completed();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running--;
+                throw e;
+            }
+        }
+    }
+
+    private synchronized void completed() {
+        running--;
+        drain();
+        if (isTerminated()) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (isTerminated()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drops queued tasks. Running tasks are not interrupted, the threads belong to the shared pool.
+     */
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown();
+        final List<Runnable> pending = new ArrayList<>(queue);
+        queue.clear();
+        return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && running == 0 && queue.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        while (!isTerminated()) {
+            if (remaining <= 0L) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.runtime;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Event loops and thread pools shared by servers and clients in one JVM.
+ * Pass it to the server and client builders with {@code runtime(...)}; servers and clients then never shut these
+ * pools down, close the runtime once after all of them are stopped.
+ */
+public class EmbeddedRuntime implements AutoCloseable {
+
+    private static final int DEFAULT_FTP_MAX_THREADS = 256;
+
+    private final EventLoopGroup eventLoopGroup;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final int ftpMaxThreads;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private OrderedThreadPoolExecutor ftpExecutor;
+
+    public EmbeddedRuntime() {
+        this(0, DEFAULT_FTP_MAX_THREADS);
+    }
+
+    /**
+     * @param ioThreads event loop threads for TCP servers and clients, 0 means Netty's default (2 * cores)
+     * @param ftpMaxThreads max threads which handle FTP commands of all FTP servers
+     */
+    public EmbeddedRuntime(int ioThreads, int ftpMaxThreads) {
+        this.eventLoopGroup = new NioEventLoopGroup(ioThreads, new DefaultThreadFactory("embedded-io", true));
+        this.executor = Executors.newCachedThreadPool(daemon("embedded-worker"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("embedded-scheduler"));
+        this.ftpMaxThreads = ftpMaxThreads;
+    }
+
+    /**
+     * Netty event loops of TCP servers and clients.
+     */
+    public EventLoopGroup eventLoopGroup() {
+        checkOpen();
+        return eventLoopGroup;
+    }
+
+    /**
+     * Cached pool for blocking work: SSH I/O and SFTP subsystems, client side parallel transfers.
+     */
+    public ExecutorService executor() {
+        checkOpen();
+        return executor;
+    }
+
+    /**
+     * A view of {@link #executor()} which runs at most {@code parallelism} tasks at once.
+     * Shutting the view down does not affect the shared pool.
+     */
+    public ExecutorService boundedExecutor(int parallelism) {
+        return new BoundedExecutor(executor(), parallelism);
+    }
+
+    public ScheduledExecutorService scheduler() {
+        checkOpen();
+        return scheduler;
+    }
+
+    /**
+     * Executor of FTP commands. It keeps commands of one session in order, so it can be shared by all FTP servers.
+     */
+    public synchronized ThreadPoolExecutor ftpExecutor() {
+        checkOpen();
+        if (ftpExecutor == null) {
+            ftpExecutor = new OrderedThreadPoolExecutor(0, ftpMaxThreads, 60L, TimeUnit.SECONDS, daemon("embedded-ftp"));
+        }
+        return ftpExecutor;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        eventLoopGroup.shutdownGracefully(0L, 2L, TimeUnit.SECONDS).syncUninterruptibly();
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+        synchronized (this) {
+            if (ftpExecutor != null) {
+                ftpExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("runtime is closed.");
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        return new DefaultThreadFactory(prefix, true);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Wraps a {@link FileSystemFactory} to serve downloads of physical files from {@link FileReadCache}.
+ */
+class CachingFtpFileSystemFactory implements FileSystemFactory {
+
+    private final FileSystemFactory delegate;
+    private final FileReadCache cache;
+
+    CachingFtpFileSystemFactory(FileSystemFactory delegate, FileReadCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public FileSystemView createFileSystemView(User user) throws FtpException {
+        return new DelegatingFileSystemView(delegate.createFileSystemView(user)) {
+            @Override
+            FtpFile wrap(FtpFile file) {
+                return file.getPhysicalFile() instanceof File ? new CachingFtpFile(file, cache) : file;
+            }
+        };
+    }
+
+    private static class CachingFtpFile extends DelegatingFtpFile {
+
+        private final FileReadCache cache;
+        private final Path path;
+
+        private CachingFtpFile(FtpFile delegate, FileReadCache cache) {
+            super(delegate);
+            this.cache = cache;
+            this.path = ((File) delegate.getPhysicalFile()).toPath();
+        }
+
+        @Override
+        public InputStream createInputStream(long offset) throws IOException {
+            final InputStream cached = cache.openStream(path, offset);
+            return cached != null ? cached : super.createInputStream(offset);
+        }
+
+        @Override
+        public OutputStream createOutputStream(long offset) throws IOException {
+            cache.invalidate(path);
+            return new FilterOutputStream(super.createOutputStream(offset)) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        cache.invalidate(path);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean delete() {
+            cache.invalidate(path);
+            return super.delete();
+        }
+
+        @Override
+        public boolean move(FtpFile destination) {
+            cache.invalidate(path);
+            if (destination.getPhysicalFile() instanceof File) {
+                cache.invalidate(((File) destination.getPhysicalFile()).toPath());
+            }
+            return super.move(destination);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.FileHandle;
+import org.apache.sshd.server.subsystem.sftp.Handle;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListenerManager;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Serves reads from {@link FileReadCache}, paths of the virtual file system are resolved against the server root.
+ */
+class CachingSftpFileSystemAccessor implements SftpFileSystemAccessor, SftpEventListener {
+
+    private final SftpFileSystemAccessor delegate;
+    private final FileReadCache cache;
+    private final Path root;
+
+    CachingSftpFileSystemAccessor(SftpFileSystemAccessor delegate, FileReadCache cache, Path root) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.root = root;
+    }
+
+    @Override
+    public SeekableByteChannel openFile(ServerSession session, SftpEventListenerManager subsystem, Path file,
+                                        String handle, Set<? extends OpenOption> options,
+                                        FileAttribute<?>... attrs) throws IOException {
+        if (isWrite(options)) {
+            cache.invalidate(physical(file));
+        } else {
+            final SeekableByteChannel cached = cache.open(physical(file));
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return delegate.openFile(session, subsystem, file, handle, options, attrs);
+    }
+
+    @Override
+    public void closed(ServerSession session, String remoteHandle, Handle localHandle, Throwable thrown) {
+        if (localHandle instanceof FileHandle && isWrite(((FileHandle) localHandle).getOpenOptions())) {
+            cache.invalidate(physical(localHandle.getFile()));
+        }
+    }
+
+    @Override
+    public void removed(ServerSession session, Path path, Throwable thrown) {
+        cache.invalidate(physical(path));
+    }
+
+    @Override
+    public void moved(ServerSession session, Path srcPath, Path dstPath, Collection<CopyOption> opts,
+                      Throwable thrown) {
+        cache.invalidate(physical(srcPath));
+        cache.invalidate(physical(dstPath));
+    }
+
+    private Path physical(Path file) {
+        final String path = file.toAbsolutePath().normalize().toString();
+        return root.resolve(path.startsWith("/") ? path.substring(1) : path);
+    }
+
+    private static boolean isWrite(Set<? extends OpenOption> options) {
+        return options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+
+class DelegatingFileSystemView implements FileSystemView {
+
+    private final FileSystemView delegate;
+
+    DelegatingFileSystemView(FileSystemView delegate) {
+        this.delegate = delegate;
+    }
+
+    FtpFile wrap(FtpFile file) {
+        return file;
+    }
+
+    @Override
+    public FtpFile getHomeDirectory() throws FtpException {
+        return wrapNullable(delegate.getHomeDirectory());
+    }
+
+    @Override
+    public FtpFile getWorkingDirectory() throws FtpException {
+        return wrapNullable(delegate.getWorkingDirectory());
+    }
+
+    @Override
+    public boolean changeWorkingDirectory(String dir) throws FtpException {
+        return delegate.changeWorkingDirectory(dir);
+    }
+
+    @Override
+    public FtpFile getFile(String file) throws FtpException {
+        return wrapNullable(delegate.getFile(file));
+    }
+
+    @Override
+    public boolean isRandomAccessible() throws FtpException {
+        return delegate.isRandomAccessible();
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    private FtpFile wrapNullable(FtpFile file) {
+        return file == null ? null : wrap(file);
+    }
+}
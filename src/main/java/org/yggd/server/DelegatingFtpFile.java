@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+class DelegatingFtpFile implements FtpFile {
+
+    private final FtpFile delegate;
+
+    DelegatingFtpFile(FtpFile delegate) {
+        this.delegate = delegate;
+    }
+
+    FtpFile getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getAbsolutePath() {
+        return delegate.getAbsolutePath();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean isHidden() {
+        return delegate.isHidden();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return delegate.isDirectory();
+    }
+
+    @Override
+    public boolean isFile() {
+        return delegate.isFile();
+    }
+
+    @Override
+    public boolean doesExist() {
+        return delegate.doesExist();
+    }
+
+    @Override
+    public boolean isReadable() {
+        return delegate.isReadable();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return delegate.isWritable();
+    }
+
+    @Override
+    public boolean isRemovable() {
+        return delegate.isRemovable();
+    }
+
+    @Override
+    public String getOwnerName() {
+        return delegate.getOwnerName();
+    }
+
+    @Override
+    public String getGroupName() {
+        return delegate.getGroupName();
+    }
+
+    @Override
+    public int getLinkCount() {
+        return delegate.getLinkCount();
+    }
+
+    @Override
+    public long getLastModified() {
+        return delegate.getLastModified();
+    }
+
+    @Override
+    public boolean setLastModified(long time) {
+        return delegate.setLastModified(time);
+    }
+
+    @Override
+    public long getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public Object getPhysicalFile() {
+        return delegate.getPhysicalFile();
+    }
+
+    @Override
+    public boolean mkdir() {
+        return delegate.mkdir();
+    }
+
+    @Override
+    public boolean delete() {
+        return delegate.delete();
+    }
+
+    @Override
+    public boolean move(FtpFile destination) {
+        FtpFile target = destination;
+        while (target instanceof DelegatingFtpFile) {
+            target = ((DelegatingFtpFile) target).delegate;
+        }
+        return delegate.move(target);
+    }
+
+    @Override
+    public List<? extends FtpFile> listFiles() {
+        return delegate.listFiles();
+    }
+
+    @Override
+    public OutputStream createOutputStream(long offset) throws IOException {
+        return delegate.createOutputStream(offset);
+    }
+
+    @Override
+    public InputStream createInputStream(long offset) throws IOException {
+        return delegate.createInputStream(offset);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Waits for in-flight work to finish on {@link EmbeddedServer#stop(Duration)}.
+ */
+final class Drain {
+
+    private static final long POLL_MILLIS = 10L;
+
+    private Drain() {}
+
+    static long deadline(Duration drainTimeout) {
+        if (drainTimeout.isNegative()) {
+            throw new IllegalArgumentException("drainTimeout must not be negative.");
+        }
+        return System.nanoTime() + drainTimeout.toNanos();
+    }
+
+    /**
+     * @return the work still in flight at the deadline, 0 when drained in time
+     */
+    static long await(LongSupplier inFlight, long deadline) throws InterruptedException {
+        long remaining = inFlight.getAsLong();
+        while (remaining > 0L && deadline - System.nanoTime() > 0L) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(POLL_MILLIS,
+                    Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+            remaining = inFlight.getAsLong();
+        }
+        return Math.max(0L, remaining);
+    }
+}
@@ -15,8 +15,47 @@
  */
 package org.yggd.server;
 
+import org.yggd.metrics.ServerMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
 public interface EmbeddedServer {
     void start();
     void stop();
+
+    /**
+     * Stops accepting connections, lets in-flight operations finish until the timeout, then closes everything.
+     * @return the number of operations cut off at the timeout, 0 when all finished
+     */
+    long stop(Duration drainTimeout);
+
     boolean isRunning();
+
+    /**
+     * Protocol-neutral connection, byte, operation and error counters, always collected.
+     * Register them in a {@link org.yggd.metrics.MetricsRegistry} to export.
+     */
+    ServerMetrics metrics();
+
+    /**
+     * Starts the server on a new thread. The stage completes when the server accepts connections.
+     */
+    default CompletionStage<Void> startAsync() {
+        return startAsync(EmbeddedServerGroup.LIFECYCLE_EXECUTOR);
+    }
+
+    default CompletionStage<Void> startAsync(Executor executor) {
+        return CompletableFuture.runAsync(this::start, executor);
+    }
+
+    default CompletionStage<Void> stopAsync() {
+        return stopAsync(EmbeddedServerGroup.LIFECYCLE_EXECUTOR);
+    }
+
+    default CompletionStage<Void> stopAsync(Executor executor) {
+        return CompletableFuture.runAsync(this::stop, executor);
+    }
 }
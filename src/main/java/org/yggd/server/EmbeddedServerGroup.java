@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.yggd.metrics.ServerMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Starts and stops several servers in parallel.
+ * If one server fails to start, {@link #startAsync()} fails at once and the servers which did start are stopped again.
+ */
+public class EmbeddedServerGroup implements EmbeddedServer {
+
+    // Starting a server blocks on socket binding, so each start/stop gets its own daemon thread.
+    static final Executor LIFECYCLE_EXECUTOR = command -> {
+        final Thread thread = new Thread(command, "embedded-server-lifecycle");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private final List<EmbeddedServer> servers;
+    private final ServerMetrics metrics;
+
+    public EmbeddedServerGroup(Collection<? extends EmbeddedServer> servers) {
+        this.servers = Collections.unmodifiableList(new ArrayList<>(servers));
+        this.metrics = ServerMetrics.sum(this.servers.stream().map(EmbeddedServer::metrics).collect(Collectors.toList()));
+    }
+
+    public static EmbeddedServerGroup of(EmbeddedServer... servers) {
+        return new EmbeddedServerGroup(Arrays.asList(servers));
+    }
+
+    public List<EmbeddedServer> getServers() {
+        return servers;
+    }
+
+    @Override
+    public void start() {
+        join(startAsync());
+    }
+
+    @Override
+    public void stop() {
+        join(stopAsync());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return servers.stream().allMatch(EmbeddedServer::isRunning);
+    }
+
+    /**
+     * The sum of all servers' metrics. Register each of {@link #getServers()} to export them per server.
+     */
+    @Override
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public CompletionStage<Void> startAsync(Executor executor) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final CompletableFuture<?>[] starts = servers.stream()
+                .map(s -> s.startAsync(executor).toCompletableFuture()
+                        .whenComplete((v, t) -> {
+                            if (t != null) {
+                                result.completeExceptionally(unwrap(t));
+                            }
+                        }))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(starts).whenComplete((v, t) -> {
+            if (t == null) {
+                result.complete(null);
+            } else {
+                // roll back once the remaining starts have settled.
+                servers.stream().filter(EmbeddedServer::isRunning).forEach(s -> s.stopAsync(executor));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletionStage<Void> stopAsync(Executor executor) {
+        final List<CompletableFuture<Void>> stops = new ArrayList<>();
+        servers.forEach(s -> stops.add(s.stopAsync(executor).toCompletableFuture()));
+        return allStopped(stops);
+    }
+
+    /**
+     * Drains all servers in parallel, each with the same timeout.
+     * @return the operations cut off on all servers
+     */
+    @Override
+    public long stop(Duration drainTimeout) {
+        final List<CompletableFuture<Long>> stops = new ArrayList<>();
+        servers.forEach(s -> stops.add(CompletableFuture.supplyAsync(() -> s.stop(drainTimeout), LIFECYCLE_EXECUTOR)));
+        join(allStopped(stops));
+        return stops.stream().mapToLong(CompletableFuture::join).sum();
+    }
+
+    private static CompletionStage<Void> allStopped(List<? extends CompletableFuture<?>> stops) {
+        return CompletableFuture.allOf(stops.toArray(new CompletableFuture<?>[0])).handle((v, t) -> {
+            if (t == null) {
+                return null;
+            }
+            EmbeddedServerException failure = null;
+            for (CompletableFuture<?> stop : stops) {
+                if (!stop.isCompletedExceptionally()) {
+                    continue;
+                }
+                final Throwable cause = unwrap(stop.handle((r, e) -> e).join());
+                if (failure == null) {
+                    failure = cause instanceof EmbeddedServerException
+                            ? (EmbeddedServerException) cause : new EmbeddedServerException(cause);
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+            throw failure;
+        });
+    }
+
+    private static void join(CompletionStage<Void> stage) {
+        try {
+            stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            final Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new EmbeddedServerException(cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU read-through cache of whole files held off-heap, shared by the embedded (S)FTP servers.
+ * Entries are invalidated by the servers' own writes and revalidated by size and last modified time.
+ * Concurrent misses of the same file share one load, and a load only allocates once its size fits the budget.
+ */
+public class FileReadCache {
+
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private final long maxBytes;
+    private final long maxFileSize;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Path, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private long cachedBytes = 0L;
+    private long reservedBytes = 0L;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public FileReadCache(long maxBytes) {
+        this(maxBytes, maxBytes);
+    }
+
+    public FileReadCache(long maxBytes, long maxFileSize) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive:" + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.maxFileSize = Math.min(Math.min(maxBytes, maxFileSize), MAX_BUFFER_SIZE);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        cachedBytes = 0L;
+    }
+
+    public void invalidate(Path path) {
+        final Path key = key(path);
+        synchronized (this) {
+            final Entry removed = entries.remove(key);
+            if (removed != null) {
+                cachedBytes -= removed.size;
+            }
+        }
+    }
+
+    /**
+     * Returns a read only channel over the cached content, or {@code null} if the file is not cacheable.
+     */
+    SeekableByteChannel open(Path path) throws IOException {
+        final Path key = key(path);
+        final BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        if (!attributes.isRegularFile() || attributes.size() > maxFileSize) {
+            return null;
+        }
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.matches(attributes)) {
+                    hits.increment();
+                    return new BufferChannel(entry.buffer.duplicate());
+                }
+                entries.remove(key);
+                cachedBytes -= entry.size;
+            }
+        }
+        final CompletableFuture<Entry> load = new CompletableFuture<>();
+        final CompletableFuture<Entry> pending = loading.putIfAbsent(key, load);
+        if (pending != null) {
+            // another reader is loading this file, a failed or outdated load falls back to the file system.
+            final Entry loaded = pending.handle((e, t) -> t == null ? e : null).join();
+            if (loaded == null || !loaded.matches(attributes)) {
+                return null;
+            }
+            hits.increment();
+            return new BufferChannel(loaded.buffer.duplicate());
+        }
+        try {
+            misses.increment();
+            if (!reserve(attributes.size())) {
+                load.complete(null);
+                return null;
+            }
+            final Entry loaded;
+            try {
+                loaded = load(key, attributes);
+            } catch (IOException | RuntimeException | Error e) {
+                synchronized (this) {
+                    reservedBytes -= attributes.size();
+                }
+                load.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (this) {
+                reservedBytes -= loaded.size;
+                final Entry previous = entries.put(key, loaded);
+                if (previous != null) {
+                    cachedBytes -= previous.size;
+                }
+                cachedBytes += loaded.size;
+                evict();
+            }
+            load.complete(loaded);
+            return new BufferChannel(loaded.buffer.duplicate());
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    InputStream openStream(Path path, long offset) throws IOException {
+        final SeekableByteChannel channel = open(path);
+        if (channel == null) {
+            return null;
+        }
+        channel.position(offset);
+        return Channels.newInputStream(channel);
+    }
+
+    private Entry load(Path path, BasicFileAttributes attributes) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final int size = (int) Math.min(attributes.size(), fileChannel.size());
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            while (buffer.hasRemaining() && fileChannel.read(buffer) >= 0) {
+                // read fully.
+            }
+            buffer.flip();
+            return new Entry(buffer.asReadOnlyBuffer(), attributes.size(), attributes.lastModifiedTime());
+        }
+    }
+
+    /**
+     * Evicts entries until {@code size} more bytes fit, {@code false} if loads in progress leave no room.
+     */
+    private synchronized boolean reserve(long size) {
+        reservedBytes += size;
+        evict();
+        if (cachedBytes + reservedBytes > maxBytes) {
+            reservedBytes -= size;
+            return false;
+        }
+        return true;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedBytes + reservedBytes > maxBytes && iterator.hasNext()) {
+            cachedBytes -= iterator.next().getValue().size;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private static class Entry {
+
+        private final ByteBuffer buffer;
+        private final long size;
+        private final FileTime lastModified;
+
+        private Entry(ByteBuffer buffer, long size, FileTime lastModified) {
+            this.buffer = buffer;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified.equals(attributes.lastModifiedTime());
+        }
+    }
+
+    private static class BufferChannel implements SeekableByteChannel {
+
+        private final ByteBuffer buffer;
+        private volatile boolean open = true;
+
+        private BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int len = Math.min(dst.remaining(), buffer.remaining());
+            final ByteBuffer slice = buffer.slice();
+            slice.limit(len);
+            dst.put(slice);
+            buffer.position(buffer.position() + len);
+            return len;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return buffer.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            buffer.position((int) Math.min(newPosition, buffer.limit()));
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return buffer.limit();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
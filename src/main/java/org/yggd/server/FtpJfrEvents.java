@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR events of the embedded FTP server, only loaded when enabled by the builder.
+ */
+final class FtpJfrEvents {
+
+    private FtpJfrEvents() {}
+
+    static void command(String command, String username, int replyCode, long nanos, long bytes) {
+        final FtpCommandEvent event = new FtpCommandEvent();
+        if (event.isEnabled()) {
+            event.command = command;
+            event.username = username;
+            event.replyCode = replyCode;
+            event.latency = nanos;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Name("org.yggd.server.FtpCommand")
+    @Label("FTP Command")
+    @Category({"Embedded Server", "FTP"})
+    static class FtpCommandEvent extends Event {
+
+        @Label("Command")
+        String command;
+
+        @Label("User")
+        String username;
+
+        @Label("Reply Code")
+        int replyCode;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("Bytes")
+        long bytes;
+    }
+}
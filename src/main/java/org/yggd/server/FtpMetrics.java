@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.DataTransferFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletContext;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.yggd.metrics.LatencyHistogram;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ftplet collecting session, login, per-command latency and transfer metrics of the embedded FTP server.
+ * Commands using the data channel are also aggregated apart from control channel commands.
+ * "uploaded" means bytes stored on the server, "downloaded" means bytes retrieved from it.
+ */
+public class FtpMetrics implements Ftplet {
+
+    private static final String COMMAND_START = FtpMetrics.class.getName() + ".start";
+    private static final Set<String> DATA_COMMANDS = new HashSet<>(
+            Arrays.asList("STOR", "STOU", "APPE", "RETR", "LIST", "NLST", "MLSD"));
+    private static final Set<String> UPLOAD_COMMANDS = new HashSet<>(Arrays.asList("STOR", "STOU", "APPE"));
+
+    private final boolean jfrEvents;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final LongAdder totalSessions = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder failedLogins = new LongAdder();
+    private final LatencyHistogram control = new LatencyHistogram();
+    private final LatencyHistogram data = new LatencyHistogram();
+    private final ConcurrentMap<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+    private final Transfer total = new Transfer();
+    private final ConcurrentMap<String, Transfer> users = new ConcurrentHashMap<>();
+
+    FtpMetrics(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    public Snapshot snapshot() {
+        final Map<String, LatencyHistogram.Snapshot> commandSnapshots = new HashMap<>();
+        commands.forEach((k, v) -> commandSnapshots.put(k, v.snapshot()));
+        final Map<String, UserTransfer> userSnapshots = new HashMap<>();
+        users.forEach((u, t) -> userSnapshots.put(u, t.snapshot(u)));
+        return new Snapshot(this, commandSnapshots, userSnapshots);
+    }
+
+    @Override
+    public void init(FtpletContext ftpletContext) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public FtpletResult onConnect(FtpSession session) {
+        activeSessions.incrementAndGet();
+        totalSessions.increment();
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult onDisconnect(FtpSession session) {
+        activeSessions.decrementAndGet();
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult beforeCommand(FtpSession session, FtpRequest request) {
+        session.setAttribute(COMMAND_START, System.nanoTime());
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(FtpSession session, FtpRequest request, FtpReply reply) {
+        final Object start = session.getAttribute(COMMAND_START);
+        if (!(start instanceof Long)) {
+            return FtpletResult.DEFAULT;
+        }
+        session.removeAttribute(COMMAND_START);
+        final long nanos = System.nanoTime() - (Long) start;
+        final String command = request.getCommand().toUpperCase(Locale.ROOT);
+        commands.computeIfAbsent(command, c -> new LatencyHistogram()).record(nanos);
+        (DATA_COMMANDS.contains(command) ? data : control).record(nanos);
+
+        final String username = session.getUser() == null ? null : session.getUser().getName();
+        if (command.equals("PASS") && reply != null) {
+            (reply.getCode() == FtpReply.REPLY_230_USER_LOGGED_IN ? logins : failedLogins).increment();
+        }
+        long bytes = 0L;
+        if (reply instanceof DataTransferFtpReply && reply.isPositive()
+                && (UPLOAD_COMMANDS.contains(command) || command.equals("RETR"))) {
+            bytes = ((DataTransferFtpReply) reply).getBytesTransferred();
+            final boolean upload = UPLOAD_COMMANDS.contains(command);
+            total.add(upload, bytes);
+            if (username != null) {
+                users.computeIfAbsent(username, u -> new Transfer()).add(upload, bytes);
+            }
+        }
+        if (jfrEvents) {
+            FtpJfrEvents.command(command, username, reply == null ? 0 : reply.getCode(), nanos, bytes);
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    private static class Transfer {
+
+        private final LongAdder uploads = new LongAdder();
+        private final LongAdder downloads = new LongAdder();
+        private final LongAdder uploaded = new LongAdder();
+        private final LongAdder downloaded = new LongAdder();
+
+        private void add(boolean upload, long bytes) {
+            (upload ? uploads : downloads).increment();
+            (upload ? uploaded : downloaded).add(bytes);
+        }
+
+        private UserTransfer snapshot(String username) {
+            return new UserTransfer(username, uploads.sum(), uploaded.sum(), downloads.sum(), downloaded.sum());
+        }
+    }
+
+    public static class Snapshot {
+
+        private final int activeSessions;
+        private final long totalSessions;
+        private final long logins;
+        private final long failedLogins;
+        private final LatencyHistogram.Snapshot control;
+        private final LatencyHistogram.Snapshot data;
+        private final Map<String, LatencyHistogram.Snapshot> commands;
+        private final UserTransfer total;
+        private final Map<String, UserTransfer> users;
+
+        private Snapshot(FtpMetrics metrics, Map<String, LatencyHistogram.Snapshot> commands,
+                         Map<String, UserTransfer> users) {
+            this.activeSessions = metrics.activeSessions.get();
+            this.totalSessions = metrics.totalSessions.sum();
+            this.logins = metrics.logins.sum();
+            this.failedLogins = metrics.failedLogins.sum();
+            this.control = metrics.control.snapshot();
+            this.data = metrics.data.snapshot();
+            this.commands = Collections.unmodifiableMap(commands);
+            this.total = metrics.total.snapshot(null);
+            this.users = Collections.unmodifiableMap(users);
+        }
+
+        public int getActiveSessions() {
+            return activeSessions;
+        }
+
+        public long getTotalSessions() {
+            return totalSessions;
+        }
+
+        public long getLogins() {
+            return logins;
+        }
+
+        public long getFailedLogins() {
+            return failedLogins;
+        }
+
+        /**
+         * Latency of commands answered on the control channel only.
+         */
+        public LatencyHistogram.Snapshot getControl() {
+            return control;
+        }
+
+        /**
+         * Latency of commands using the data channel, e.g. STOR, RETR and LIST.
+         */
+        public LatencyHistogram.Snapshot getData() {
+            return data;
+        }
+
+        /**
+         * @return null if the command was never received.
+         */
+        public LatencyHistogram.Snapshot getCommand(String command) {
+            return commands.get(command.toUpperCase(Locale.ROOT));
+        }
+
+        public Map<String, LatencyHistogram.Snapshot> getCommands() {
+            return commands;
+        }
+
+        public UserTransfer getTotal() {
+            return total;
+        }
+
+        public Map<String, UserTransfer> getUsers() {
+            return users;
+        }
+    }
+
+    public static class UserTransfer {
+
+        private final String username;
+        private final long uploads;
+        private final long bytesUploaded;
+        private final long downloads;
+        private final long bytesDownloaded;
+
+        private UserTransfer(String username, long uploads, long bytesUploaded, long downloads, long bytesDownloaded) {
+            this.username = username;
+            this.uploads = uploads;
+            this.bytesUploaded = bytesUploaded;
+            this.downloads = downloads;
+            this.bytesDownloaded = bytesDownloaded;
+        }
+
+        /**
+         * @return null for the server total.
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        public long getUploads() {
+            return uploads;
+        }
+
+        public long getBytesUploaded() {
+            return bytesUploaded;
+        }
+
+        public long getDownloads() {
+            return downloads;
+        }
+
+        public long getBytesDownloaded() {
+            return bytesDownloaded;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.DataTransferFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.FtpletContext;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.yggd.metrics.ServerMetrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Always installed Ftplet feeding {@link ServerMetrics}: every command is an operation, negative replies are errors,
+ * and bytes are the file data of STOR/STOU/APPE (received) and RETR (sent).
+ */
+class FtpServerMetrics implements Ftplet {
+
+    private static final String COMMAND_START = FtpServerMetrics.class.getName() + ".start";
+
+    private final ServerMetrics metrics = new ServerMetrics("ftp");
+
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void init(FtpletContext ftpletContext) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public FtpletResult onConnect(FtpSession session) {
+        metrics.connectionOpened();
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult onDisconnect(FtpSession session) {
+        // a command cut off by the disconnect never reaches afterCommand.
+        if (claim(session) != 0L) {
+            metrics.operationAborted();
+        }
+        metrics.connectionClosed();
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult beforeCommand(FtpSession session, FtpRequest request) {
+        metrics.operationStarted();
+        session.setAttribute(COMMAND_START, new AtomicLong(System.nanoTime()));
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(FtpSession session, FtpRequest request, FtpReply reply) {
+        final long start = claim(session);
+        if (start == 0L) {
+            return FtpletResult.DEFAULT;
+        }
+        metrics.operation(System.nanoTime() - start);
+        if (reply == null) {
+            return FtpletResult.DEFAULT;
+        }
+        if (!reply.isPositive()) {
+            metrics.error();
+        } else if (reply instanceof DataTransferFtpReply) {
+            final String command = request.getCommand().toUpperCase(Locale.ROOT);
+            final long bytes = ((DataTransferFtpReply) reply).getBytesTransferred();
+            if (command.equals("STOR") || command.equals("STOU") || command.equals("APPE")) {
+                metrics.bytesReceived(bytes);
+            } else if (command.equals("RETR")) {
+                metrics.bytesSent(bytes);
+            }
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    // afterCommand and onDisconnect may race, only one of them ends the command.
+    private static long claim(FtpSession session) {
+        final Object start = session.getAttribute(COMMAND_START);
+        return start instanceof AtomicLong ? ((AtomicLong) start).getAndSet(0L) : 0L;
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.impl.WriteRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * {@link FileSystemFactory} keeping all files in memory. All users share one tree, each user is rooted at
+ * its home directory. Uploads fail once the stored bytes would exceed the capacity.
+ */
+public class InMemoryFileSystemFactory implements FileSystemFactory {
+
+    private final Directory root = new Directory();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private volatile long capacity = Long.MAX_VALUE;
+    private volatile boolean createHome = true;
+
+    public void setCapacity(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative.");
+        }
+        this.capacity = capacity;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public void setCreateHome(boolean createHome) {
+        this.createHome = createHome;
+    }
+
+    public boolean isCreateHome() {
+        return createHome;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    @Override
+    public FileSystemView createFileSystemView(User user) throws FtpException {
+        final String home = normalize("/", user.getHomeDirectory() == null ? "/" : user.getHomeDirectory());
+        Node node = find(home);
+        if (node == null && createHome) {
+            node = mkdirs(home);
+        }
+        if (!(node instanceof Directory)) {
+            throw new FtpException("Home directory does not exist: " + home);
+        }
+        return new InMemoryFileSystemView(this, user, home);
+    }
+
+    Node find(String path) {
+        Node node = root;
+        for (String segment : segments(path)) {
+            if (!(node instanceof Directory)) {
+                return null;
+            }
+            node = ((Directory) node).children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node mkdirs(String path) {
+        Node node = root;
+        for (String segment : segments(path)) {
+            if (!(node instanceof Directory)) {
+                return null;
+            }
+            node = ((Directory) node).children.computeIfAbsent(segment, s -> new Directory());
+        }
+        return node;
+    }
+
+    private void reserve(long bytes) throws IOException {
+        long used;
+        do {
+            used = usedBytes.get();
+            if (used + bytes > capacity) {
+                throw new IOException("Insufficient storage, capacity of " + capacity + " bytes exceeded.");
+            }
+        } while (!usedBytes.compareAndSet(used, used + bytes));
+    }
+
+    private void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Resolves name against the directory, '.' and '..' are collapsed and the result never leaves '/'.
+     */
+    static String normalize(String directory, String name) {
+        final String path = name.replace('\\', '/');
+        final Deque<String> segments = new ArrayDeque<>();
+        if (!path.startsWith("/")) {
+            segments.addAll(segments(directory));
+        }
+        for (String segment : segments(path)) {
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else if (!segment.equals(".") && !segment.equals("~")) {
+                segments.addLast(segment);
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    private static List<String> segments(String path) {
+        return Arrays.stream(path.split("/")).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+    }
+
+    private static String parent(String path) {
+        final int index = path.lastIndexOf('/');
+        return index <= 0 ? "/" : path.substring(0, index);
+    }
+
+    private static String name(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    abstract static class Node {
+
+        volatile long lastModified = System.currentTimeMillis();
+    }
+
+    static class Directory extends Node {
+
+        private final ConcurrentSkipListMap<String, Node> children = new ConcurrentSkipListMap<>();
+    }
+
+    static class FileNode extends Node {
+
+        private volatile byte[] content = new byte[0];
+        private boolean deleted = false;
+    }
+
+    private static class InMemoryFileSystemView implements FileSystemView {
+
+        private final InMemoryFileSystemFactory factory;
+        private final User user;
+        private final String home;
+        private String workingDirectory = "/";
+
+        private InMemoryFileSystemView(InMemoryFileSystemFactory factory, User user, String home) {
+            this.factory = factory;
+            this.user = user;
+            this.home = home;
+        }
+
+        @Override
+        public FtpFile getHomeDirectory() {
+            return new InMemoryFtpFile(this, "/");
+        }
+
+        @Override
+        public FtpFile getWorkingDirectory() {
+            return new InMemoryFtpFile(this, workingDirectory);
+        }
+
+        @Override
+        public boolean changeWorkingDirectory(String dir) {
+            final String path = normalize(workingDirectory, dir);
+            if (!(factory.find(physical(path)) instanceof Directory)) {
+                return false;
+            }
+            workingDirectory = path;
+            return true;
+        }
+
+        @Override
+        public FtpFile getFile(String file) {
+            return new InMemoryFtpFile(this, normalize(workingDirectory, file));
+        }
+
+        @Override
+        public boolean isRandomAccessible() {
+            return true;
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        private String physical(String path) {
+            return home.equals("/") ? path : path.equals("/") ? home : home + path;
+        }
+    }
+
+    private static class InMemoryFtpFile implements FtpFile {
+
+        private final InMemoryFileSystemView view;
+        private final InMemoryFileSystemFactory factory;
+        private final String path;
+
+        private InMemoryFtpFile(InMemoryFileSystemView view, String path) {
+            this.view = view;
+            this.factory = view.factory;
+            this.path = path;
+        }
+
+        private Node node() {
+            return factory.find(view.physical(path));
+        }
+
+        private Directory parentDirectory() {
+            final Node parent = factory.find(view.physical(parent(path)));
+            return parent instanceof Directory ? (Directory) parent : null;
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return path;
+        }
+
+        @Override
+        public String getName() {
+            return path.equals("/") ? "/" : name(path);
+        }
+
+        @Override
+        public boolean isHidden() {
+            return false;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return node() instanceof Directory;
+        }
+
+        @Override
+        public boolean isFile() {
+            return node() instanceof FileNode;
+        }
+
+        @Override
+        public boolean doesExist() {
+            return node() != null;
+        }
+
+        @Override
+        public boolean isReadable() {
+            return doesExist();
+        }
+
+        @Override
+        public boolean isWritable() {
+            return view.user.authorize(new WriteRequest(path)) != null;
+        }
+
+        @Override
+        public boolean isRemovable() {
+            return !path.equals("/") && isWritable();
+        }
+
+        @Override
+        public String getOwnerName() {
+            return "user";
+        }
+
+        @Override
+        public String getGroupName() {
+            return "group";
+        }
+
+        @Override
+        public int getLinkCount() {
+            return isDirectory() ? 3 : 1;
+        }
+
+        @Override
+        public long getLastModified() {
+            final Node node = node();
+            return node == null ? 0L : node.lastModified;
+        }
+
+        @Override
+        public boolean setLastModified(long time) {
+            final Node node = node();
+            if (node == null) {
+                return false;
+            }
+            node.lastModified = time;
+            return true;
+        }
+
+        @Override
+        public long getSize() {
+            final Node node = node();
+            return node instanceof FileNode ? ((FileNode) node).content.length : 0L;
+        }
+
+        @Override
+        public Object getPhysicalFile() {
+            return node();
+        }
+
+        @Override
+        public boolean mkdir() {
+            final Directory parent = parentDirectory();
+            return parent != null && !path.equals("/") && parent.children.putIfAbsent(name(path), new Directory()) == null;
+        }
+
+        @Override
+        public boolean delete() {
+            final Directory parent = parentDirectory();
+            final Node node = node();
+            if (parent == null || node == null || path.equals("/")) {
+                return false;
+            }
+            if (node instanceof Directory && !((Directory) node).children.isEmpty()) {
+                return false;
+            }
+            if (!parent.children.remove(name(path), node)) {
+                return false;
+            }
+            if (node instanceof FileNode) {
+                final FileNode file = (FileNode) node;
+                synchronized (file) {
+                    file.deleted = true;
+                    factory.release(file.content.length);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean move(FtpFile destination) {
+            if (!(destination instanceof InMemoryFtpFile)) {
+                return false;
+            }
+            final InMemoryFtpFile target = (InMemoryFtpFile) destination;
+            final Directory parent = parentDirectory();
+            final Directory targetParent = target.parentDirectory();
+            final Node node = node();
+            if (parent == null || targetParent == null || node == null || path.equals("/")) {
+                return false;
+            }
+            if (targetParent.children.putIfAbsent(name(target.path), node) != null) {
+                return false;
+            }
+            parent.children.remove(name(path), node);
+            node.lastModified = System.currentTimeMillis();
+            return true;
+        }
+
+        @Override
+        public List<? extends FtpFile> listFiles() {
+            final Node node = node();
+            if (!(node instanceof Directory)) {
+                return null;
+            }
+            final String prefix = path.equals("/") ? "/" : path + "/";
+            return ((Directory) node).children.keySet().stream()
+                    .map(name -> new InMemoryFtpFile(view, prefix + name))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public OutputStream createOutputStream(long offset) throws IOException {
+            final Directory parent = parentDirectory();
+            if (parent == null) {
+                throw new IOException("No such directory: " + parent(path));
+            }
+            final Node node = parent.children.computeIfAbsent(name(path), n -> new FileNode());
+            if (!(node instanceof FileNode)) {
+                throw new IOException("Not a file: " + path);
+            }
+            return new InMemoryOutputStream(factory, (FileNode) node, offset);
+        }
+
+        @Override
+        public InputStream createInputStream(long offset) throws IOException {
+            final Node node = node();
+            if (!(node instanceof FileNode)) {
+                throw new IOException("No such file: " + path);
+            }
+            final byte[] content = ((FileNode) node).content;
+            final int start = (int) Math.min(offset, content.length);
+            return new ByteArrayInputStream(content, start, content.length - start);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof InMemoryFtpFile && ((InMemoryFtpFile) obj).view.physical(((InMemoryFtpFile) obj).path)
+                    .equals(view.physical(path));
+        }
+
+        @Override
+        public int hashCode() {
+            return view.physical(path).hashCode();
+        }
+    }
+
+    /**
+     * Buffers the upload and replaces the file content on close, so readers never see a partial file.
+     */
+    private static class InMemoryOutputStream extends OutputStream {
+
+        private final InMemoryFileSystemFactory factory;
+        private final FileNode file;
+        private final ByteArrayOutputStream buffer;
+        private long reserved = 0L;
+        private boolean closed = false;
+
+        private InMemoryOutputStream(InMemoryFileSystemFactory factory, FileNode file, long offset) throws IOException {
+            this.factory = factory;
+            this.file = file;
+            final byte[] prefix = offset > 0 ? Arrays.copyOf(file.content, (int) offset) : new byte[0];
+            reserve(prefix.length);
+            this.buffer = new ByteArrayOutputStream(Math.max(32, prefix.length));
+            buffer.write(prefix, 0, prefix.length);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            reserve(1);
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserve(len);
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (file) {
+                if (file.deleted) {
+                    factory.release(reserved);
+                    return;
+                }
+                factory.release(file.content.length);
+                file.content = buffer.toByteArray();
+                file.lastModified = System.currentTimeMillis();
+            }
+        }
+
+        private void reserve(long bytes) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed.");
+            }
+            try {
+                factory.reserve(bytes);
+            } catch (IOException e) {
+                // the upload is dropped, the existing content stays.
+                closed = true;
+                factory.release(reserved);
+                throw e;
+            }
+            reserved += bytes;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.AnonymousAuthentication;
+import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
+import org.apache.ftpserver.usermanager.PasswordEncryptor;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.apache.ftpserver.usermanager.impl.AbstractUserManager;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link org.apache.ftpserver.ftplet.UserManager} backed by a concurrent map, users are looked up in constant time.
+ */
+public class InMemoryUserManager extends AbstractUserManager {
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final ConcurrentMap<String, StoredUser> users = new ConcurrentHashMap<>();
+
+    public InMemoryUserManager() {
+        this("admin", new ClearTextPasswordEncryptor());
+    }
+
+    public InMemoryUserManager(String adminName, PasswordEncryptor passwordEncryptor) {
+        super(adminName, passwordEncryptor);
+    }
+
+    @Override
+    public User getUserByName(String username) {
+        final StoredUser stored = username == null ? null : users.get(username);
+        return stored == null ? null : stored.user;
+    }
+
+    @Override
+    public String[] getAllUserNames() {
+        return users.keySet().stream().sorted().toArray(String[]::new);
+    }
+
+    @Override
+    public void delete(String username) {
+        users.remove(username);
+    }
+
+    /**
+     * Stores a copy of the user, the password is kept when the given user has none.
+     */
+    @Override
+    public void save(User user) {
+        if (user.getName() == null) {
+            throw new IllegalArgumentException("User name is null.");
+        }
+        final BaseUser copy = new BaseUser(user);
+        copy.setPassword(null);
+        // unlimited like PropertiesUserManager, BaseUser denies logins and transfers without these.
+        final List<Authority> authorities = new ArrayList<>(user.getAuthorities() == null
+                ? Collections.emptyList() : user.getAuthorities());
+        if (authorities.stream().noneMatch(a -> a instanceof ConcurrentLoginPermission)) {
+            authorities.add(new ConcurrentLoginPermission(0, 0));
+        }
+        if (authorities.stream().noneMatch(a -> a instanceof TransferRatePermission)) {
+            authorities.add(new TransferRatePermission(0, 0));
+        }
+        copy.setAuthorities(authorities);
+        final String password = user.getPassword() == null ? null : getPasswordEncryptor().encrypt(user.getPassword());
+        users.compute(user.getName(), (name, old) ->
+                new StoredUser(copy, password != null || old == null ? password : old.password));
+    }
+
+    public void saveAll(Collection<? extends User> users) {
+        users.forEach(this::save);
+    }
+
+    @Override
+    public boolean doesExist(String username) {
+        return username != null && users.containsKey(username);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public User authenticate(Authentication authentication) throws AuthenticationFailedException {
+        if (authentication instanceof UsernamePasswordAuthentication) {
+            final UsernamePasswordAuthentication upa = (UsernamePasswordAuthentication) authentication;
+            final StoredUser stored = upa.getUsername() == null ? null : users.get(upa.getUsername());
+            if (stored == null || stored.password == null || upa.getPassword() == null
+                    || !getPasswordEncryptor().matches(upa.getPassword(), stored.password)) {
+                throw new AuthenticationFailedException("Authentication failed");
+            }
+            return stored.user;
+        }
+        if (authentication instanceof AnonymousAuthentication) {
+            final StoredUser stored = users.get(ANONYMOUS);
+            if (stored == null) {
+                throw new AuthenticationFailedException("Authentication failed");
+            }
+            return stored.user;
+        }
+        throw new IllegalArgumentException("Authentication not supported by this user manager");
+    }
+
+    private static class StoredUser {
+
+        private final User user;
+        private final String password;
+
+        private StoredUser(User user, String password) {
+            this.user = user;
+            this.password = password;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.threads.CloseableExecutorService;
+import org.apache.sshd.common.util.threads.NoCloseExecutor;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.subsystem.sftp.SftpErrorStatusDataHandler;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystem;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.server.subsystem.sftp.UnsupportedAttributePolicy;
+
+import java.io.IOException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Times READDIR requests, which {@code SftpEventListener} only reports after the fact,
+ * answers stat of synthetic files and runs subsystems on a shared executor when one is set.
+ */
+class InstrumentedSftpSubsystemFactory extends SftpSubsystemFactory {
+
+    private volatile SftpMetrics metrics;
+
+    private volatile ExecutorService sharedExecutor;
+
+    private volatile SyntheticFiles syntheticFiles;
+
+    void setMetrics(SftpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setSharedExecutor(ExecutorService sharedExecutor) {
+        this.sharedExecutor = sharedExecutor;
+    }
+
+    void setSyntheticFiles(SyntheticFiles syntheticFiles) {
+        this.syntheticFiles = syntheticFiles;
+    }
+
+    @Override
+    public Command create() {
+        final SftpMetrics sftpMetrics = metrics;
+        final ExecutorService shared = sharedExecutor;
+        final SyntheticFiles synthetic = syntheticFiles;
+        if (sftpMetrics == null && shared == null && synthetic == null) {
+            return super.create();
+        }
+        // a subsystem shuts its executor down on exit, so each one gets its own non-closing view of the shared pool.
+        final CloseableExecutorService executor = shared != null ? new NoCloseExecutor(shared) : getExecutorService();
+        final SftpSubsystem subsystem = new InstrumentedSftpSubsystem(executor, getUnsupportedAttributePolicy(),
+                getFileSystemAccessor(), getErrorStatusDataHandler(), sftpMetrics, synthetic);
+        getRegisteredListeners().forEach(subsystem::addSftpEventListener);
+        return subsystem;
+    }
+
+    private static class InstrumentedSftpSubsystem extends SftpSubsystem {
+
+        private final SftpMetrics metrics;
+        private final SyntheticFiles syntheticFiles;
+
+        InstrumentedSftpSubsystem(CloseableExecutorService executor, UnsupportedAttributePolicy policy,
+                                  SftpFileSystemAccessor accessor, SftpErrorStatusDataHandler errorStatusDataHandler,
+                                  SftpMetrics metrics, SyntheticFiles syntheticFiles) {
+            super(executor, policy, accessor, errorStatusDataHandler);
+            this.metrics = metrics;
+            this.syntheticFiles = syntheticFiles;
+        }
+
+        @Override
+        protected void doReadDir(Buffer buffer, int id) throws IOException {
+            if (metrics == null) {
+                super.doReadDir(buffer, id);
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                super.doReadDir(buffer, id);
+            } finally {
+                metrics.record(SftpMetrics.Operation.READDIR, getServerSession(), System.nanoTime() - start, 0L);
+            }
+        }
+
+        @Override
+        protected NavigableMap<String, Object> resolveFileAttributes(Path file, int flags, LinkOption... options)
+                throws IOException {
+            final SyntheticFiles.SyntheticFile syntheticFile = findSynthetic(file);
+            return syntheticFile != null ? SyntheticSftpFileSystemAccessor.attributes(syntheticFile)
+                    : super.resolveFileAttributes(file, flags, options);
+        }
+
+        @Override
+        protected NavigableMap<String, Object> getAttributes(Path file, int flags, LinkOption... options)
+                throws IOException {
+            final SyntheticFiles.SyntheticFile syntheticFile = findSynthetic(file);
+            return syntheticFile != null ? SyntheticSftpFileSystemAccessor.attributes(syntheticFile)
+                    : super.getAttributes(file, flags, options);
+        }
+
+        private SyntheticFiles.SyntheticFile findSynthetic(Path file) {
+            return syntheticFiles == null ? null : syntheticFiles.find(file.toAbsolutePath().normalize().toString());
+        }
+    }
+}
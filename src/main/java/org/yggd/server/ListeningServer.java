@@ -0,0 +1,30 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A single server listening on a socket. {@link EmbeddedServerGroup} is not one, use {@link EmbeddedServerGroup#getServers()}.
+ */
+public interface ListeningServer extends EmbeddedServer {
+
+    /**
+     * The address the server listens on, with the actual port when it was configured with port 0.
+     * @throws IllegalStateException if the server is not running
+     */
+    InetSocketAddress boundAddress();
+}
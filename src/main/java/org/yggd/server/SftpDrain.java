@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.Handle;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks SFTP transfers for {@link EmbeddedServer#stop(java.time.Duration)}: a transfer lasts from opening a handle
+ * until it is closed. While draining, new SSH sessions are closed at once.
+ */
+class SftpDrain implements SessionListener, SftpEventListener {
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final ConcurrentMap<Session, AtomicInteger> handles = new ConcurrentHashMap<>();
+    // openFailed is also signalled when the open fails before a handle was created.
+    private final ThreadLocal<Boolean> opening = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    void drain() {
+        draining.set(true);
+    }
+
+    long inFlight() {
+        return handles.values().stream().mapToLong(AtomicInteger::get).sum();
+    }
+
+    @Override
+    public void sessionCreated(Session session) {
+        if (draining.get()) {
+            session.close(true);
+        }
+    }
+
+    @Override
+    public void sessionClosed(Session session) {
+        // handles left open by a closed session are no longer in flight.
+        handles.remove(session);
+    }
+
+    @Override
+    public void opening(ServerSession session, String remoteHandle, Handle localHandle) {
+        handles.computeIfAbsent(session, s -> new AtomicInteger()).incrementAndGet();
+        opening.set(Boolean.TRUE);
+    }
+
+    @Override
+    public void open(ServerSession session, String remoteHandle, Handle localHandle) {
+        opening.set(Boolean.FALSE);
+    }
+
+    @Override
+    public void openFailed(ServerSession session, String remotePath, Path localPath, boolean isDirectory,
+                           Throwable thrown) {
+        if (opening.get()) {
+            opening.set(Boolean.FALSE);
+            release(session);
+        }
+    }
+
+    @Override
+    public void closed(ServerSession session, String remoteHandle, Handle localHandle, Throwable thrown) {
+        release(session);
+    }
+
+    private void release(ServerSession session) {
+        final AtomicInteger open = handles.get(session);
+        if (open != null) {
+            open.updateAndGet(n -> Math.max(0, n - 1));
+        }
+    }
+}
@@ -15,17 +15,25 @@
  */
 package org.yggd.server;
 
+import org.apache.sshd.common.PropertyResolverUtils;
 import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.common.io.nio2.Nio2ServiceFactoryFactory;
+import org.apache.sshd.common.util.threads.NoCloseExecutor;
+import org.apache.sshd.server.ServerFactoryManager;
 import org.apache.sshd.server.SshServer;
 import org.apache.sshd.server.auth.password.PasswordAuthenticator;
 import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
 import org.apache.sshd.server.session.ServerSession;
-import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
 import org.springframework.core.io.Resource;
+import org.yggd.metrics.ServerMetrics;
+import org.yggd.runtime.EmbeddedRuntime;
 
 import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -35,13 +43,26 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 public class SftpEmbeddedServerBuilder implements EmbeddedServerBuilder {
 
     private final SshServer sshServer;
+    private final InstrumentedSftpSubsystemFactory sftpSubsystemFactory = new InstrumentedSftpSubsystemFactory();
+
+    private int maxSessions = -1;
+    private long sessionBandwidth = -1L;
+    private long bandwidth = -1L;
+    private boolean metrics = false;
+    private boolean jfrEvents = false;
+    private Path root;
+    private SyntheticFiles syntheticFiles;
+    private FileReadCache readCache;
+    private EmbeddedRuntime runtime;
 
     SftpEmbeddedServerBuilder(SshServer sshServer) {
         this.sshServer = sshServer;
@@ -54,7 +75,45 @@ public class SftpEmbeddedServerBuilder implements EmbeddedServerBuilder {
 
     public SftpEmbeddedServerBuilder port(int port) {
         sshServer.setPort(port);
-        sshServer.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        sshServer.setSubsystemFactories(Collections.singletonList(sftpSubsystemFactory));
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder maxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder maxSessionsPerUser(int maxSessionsPerUser) {
+        PropertyResolverUtils.updateProperty(sshServer, ServerFactoryManager.MAX_CONCURRENT_SESSIONS, maxSessionsPerUser);
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder sessionBandwidth(long bytesPerSecond) {
+        this.sessionBandwidth = bytesPerSecond;
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder bandwidth(long bytesPerSecond) {
+        this.bandwidth = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Runs SSH I/O, timers and SFTP subsystems on the runtime's pools instead of per-server ones.
+     */
+    public SftpEmbeddedServerBuilder runtime(EmbeddedRuntime runtime) {
+        this.runtime = runtime;
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder metrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder jfrEvents(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
         return this;
     }
 
@@ -63,6 +122,17 @@ public class SftpEmbeddedServerBuilder implements EmbeddedServerBuilder {
             throw new EmbeddedServerException("failed create directory:" + dir);
         }
         sshServer.setFileSystemFactory(new VirtualFileSystemFactory(dir));
+        this.root = dir;
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder syntheticFiles(SyntheticFiles syntheticFiles) {
+        this.syntheticFiles = syntheticFiles;
+        return this;
+    }
+
+    public SftpEmbeddedServerBuilder readCache(FileReadCache readCache) {
+        this.readCache = readCache;
         return this;
     }
 
@@ -156,16 +226,73 @@ public class SftpEmbeddedServerBuilder implements EmbeddedServerBuilder {
     }
 
     @Override
-    public EmbeddedServer build() {
-        return new SshEmbeddedServer(sshServer);
+    public SshEmbeddedServer build() {
+        if (maxSessions > 0 || sessionBandwidth > 0 || bandwidth > 0) {
+            final SftpSessionLimiter limiter = new SftpSessionLimiter(maxSessions, sessionBandwidth, bandwidth);
+            sshServer.addSessionListener(limiter);
+            sftpSubsystemFactory.addSftpEventListener(limiter);
+        }
+        SftpFileSystemAccessor accessor = SftpFileSystemAccessor.DEFAULT;
+        if (readCache != null) {
+            if (root == null) {
+                throw new EmbeddedServerException("readCache requires directory.");
+            }
+            final CachingSftpFileSystemAccessor cachingAccessor = new CachingSftpFileSystemAccessor(accessor, readCache, root);
+            sftpSubsystemFactory.addSftpEventListener(cachingAccessor);
+            accessor = cachingAccessor;
+        }
+        if (syntheticFiles != null) {
+            accessor = new SyntheticSftpFileSystemAccessor(accessor, syntheticFiles);
+            sftpSubsystemFactory.setSyntheticFiles(syntheticFiles);
+        }
+        sftpSubsystemFactory.setFileSystemAccessor(accessor);
+        if (runtime != null) {
+            final ExecutorService executor = runtime.executor();
+            sshServer.setScheduledExecutorService(runtime.scheduler(), false);
+            sshServer.setIoServiceFactoryFactory(new Nio2ServiceFactoryFactory(() -> new NoCloseExecutor(executor)));
+            sftpSubsystemFactory.setSharedExecutor(executor);
+        }
+        final SftpServerMetrics serverMetrics = new SftpServerMetrics();
+        sshServer.addSessionListener(serverMetrics);
+        sftpSubsystemFactory.addSftpEventListener(serverMetrics);
+        final SftpDrain drain = new SftpDrain();
+        sshServer.addSessionListener(drain);
+        sftpSubsystemFactory.addSftpEventListener(drain);
+        SftpMetrics sftpMetrics = null;
+        if (metrics || jfrEvents) {
+            sftpMetrics = new SftpMetrics(jfrEvents);
+            sshServer.addSessionListener(sftpMetrics);
+            sftpSubsystemFactory.addSftpEventListener(sftpMetrics);
+            sftpSubsystemFactory.setMetrics(sftpMetrics);
+        }
+        return new SshEmbeddedServer(sshServer, drain, serverMetrics.metrics(), sftpMetrics);
     }
 
-    private static class SshEmbeddedServer implements EmbeddedServer {
+    public static class SshEmbeddedServer implements ListeningServer {
 
         private final SshServer sshServer;
+        private final SftpDrain drain;
+        private final ServerMetrics serverMetrics;
+        private final SftpMetrics sftpMetrics;
 
-        private SshEmbeddedServer(SshServer sshServer) {
+        private SshEmbeddedServer(SshServer sshServer, SftpDrain drain, ServerMetrics serverMetrics,
+                                  SftpMetrics sftpMetrics) {
             this.sshServer = sshServer;
+            this.drain = drain;
+            this.serverMetrics = serverMetrics;
+            this.sftpMetrics = sftpMetrics;
+        }
+
+        @Override
+        public ServerMetrics metrics() {
+            return serverMetrics;
+        }
+
+        public SftpMetrics.Snapshot sftpMetrics() {
+            if (sftpMetrics == null) {
+                throw new IllegalStateException("metrics is not enabled, call metrics(true) on builder.");
+            }
+            return sftpMetrics.snapshot();
         }
 
         @Override
@@ -186,9 +313,47 @@ public class SftpEmbeddedServerBuilder implements EmbeddedServerBuilder {
             }
         }
 
+        /**
+         * In-flight operations are open SFTP file and directory handles, so a transfer may finish across requests.
+         * While draining, the port stays bound but new sessions are closed at once.
+         */
+        @Override
+        public long stop(Duration drainTimeout) {
+            final long deadline = Drain.deadline(drainTimeout);
+            drain.drain();
+            final long cutOff;
+            try {
+                cutOff = Drain.await(drain::inFlight, deadline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopImmediately();
+                throw new EmbeddedServerException("interrupted while draining.", e);
+            }
+            stopImmediately();
+            return cutOff;
+        }
+
+        private void stopImmediately() {
+            try {
+                sshServer.stop(true);
+            } catch (IOException e) {
+                throw new EmbeddedServerException(e);
+            }
+        }
+
         @Override
         public boolean isRunning() {
             return sshServer.isStarted();
         }
+
+        @Override
+        public InetSocketAddress boundAddress() {
+            for (SocketAddress address : sshServer.getBoundAddresses()) {
+                if (address instanceof InetSocketAddress) {
+                    return (InetSocketAddress) address;
+                }
+            }
+            throw new IllegalStateException("server is not running.");
+        }
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR events of the embedded SFTP server, only loaded when enabled by the builder.
+ */
+final class SftpJfrEvents {
+
+    private SftpJfrEvents() {}
+
+    static void operation(SftpMetrics.Operation operation, String username, long nanos, long bytes) {
+        final SftpOperationEvent event = new SftpOperationEvent();
+        if (event.isEnabled()) {
+            event.operation = operation.name();
+            event.username = username;
+            event.latency = nanos;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    static void handshake(String remoteAddress, long nanos) {
+        final SftpHandshakeEvent event = new SftpHandshakeEvent();
+        if (event.isEnabled()) {
+            event.remoteAddress = remoteAddress;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    @Name("org.yggd.server.SftpOperation")
+    @Label("SFTP Operation")
+    @Category({"Embedded Server", "SFTP"})
+    static class SftpOperationEvent extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("User")
+        String username;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("Bytes")
+        long bytes;
+    }
+
+    @Name("org.yggd.server.SftpHandshake")
+    @Label("SFTP Handshake")
+    @Category({"Embedded Server", "SFTP"})
+    static class SftpHandshakeEvent extends Event {
+
+        @Label("Remote Address")
+        String remoteAddress;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.common.AttributeStore;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.FileHandle;
+import org.apache.sshd.server.subsystem.sftp.Handle;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
+import org.yggd.metrics.LatencyHistogram;
+
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects session and transfer metrics of the embedded SFTP server.
+ * "read" means bytes read from the server file system (download), "written" means bytes
+ * written into it (upload).
+ */
+public class SftpMetrics implements SessionListener, SftpEventListener {
+
+    public enum Operation {
+        OPEN, READ, WRITE, CLOSE, READDIR
+    }
+
+    private static final AttributeStore.AttributeKey<Long> HANDSHAKE_START = new AttributeStore.AttributeKey<>();
+
+    private final boolean jfrEvents;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final LongAdder totalSessions = new LongAdder();
+    private final LatencyHistogram handshake = new LatencyHistogram();
+    private final Map<Operation, LatencyHistogram> operations = new EnumMap<>(Operation.class);
+    private final ConcurrentMap<Session, Transfer> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Transfer> users = new ConcurrentHashMap<>();
+    private final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[Operation.values().length]);
+
+    SftpMetrics(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public Snapshot snapshot() {
+        final Map<Operation, LatencyHistogram.Snapshot> operationSnapshots = new EnumMap<>(Operation.class);
+        operations.forEach((k, v) -> operationSnapshots.put(k, v.snapshot()));
+        final List<SessionTransfer> sessionSnapshots = new ArrayList<>();
+        sessions.forEach((s, t) -> sessionSnapshots.add(
+                new SessionTransfer(s.getIoSession().getId(), s.getUsername(), s.getIoSession().getRemoteAddress(),
+                        t.read.sum(), t.written.sum())));
+        final Map<String, UserTransfer> userSnapshots = new HashMap<>();
+        users.forEach((u, t) -> userSnapshots.put(u, new UserTransfer(u, t.read.sum(), t.written.sum())));
+        return new Snapshot(activeSessions.get(), totalSessions.sum(), handshake.snapshot(),
+                operationSnapshots, sessionSnapshots, userSnapshots);
+    }
+
+    void record(Operation operation, ServerSession session, long nanos, long bytes) {
+        operations.get(operation).record(nanos);
+        if (jfrEvents) {
+            SftpJfrEvents.operation(operation, session.getUsername(), nanos, bytes);
+        }
+    }
+
+    @Override
+    public void sessionCreated(Session session) {
+        activeSessions.incrementAndGet();
+        totalSessions.increment();
+        session.setAttribute(HANDSHAKE_START, System.nanoTime());
+        sessions.put(session, new Transfer());
+    }
+
+    @Override
+    public void sessionEvent(Session session, Event event) {
+        if (event != Event.KeyEstablished) {
+            return;
+        }
+        final Long start = session.removeAttribute(HANDSHAKE_START);
+        if (start != null) {
+            final long nanos = System.nanoTime() - start;
+            handshake.record(nanos);
+            if (jfrEvents) {
+                SftpJfrEvents.handshake(String.valueOf(session.getIoSession().getRemoteAddress()), nanos);
+            }
+        }
+    }
+
+    @Override
+    public void sessionClosed(Session session) {
+        if (sessions.remove(session) != null) {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void opening(ServerSession session, String remoteHandle, Handle localHandle) {
+        start(Operation.OPEN);
+    }
+
+    @Override
+    public void open(ServerSession session, String remoteHandle, Handle localHandle) {
+        stop(Operation.OPEN, session, 0L);
+    }
+
+    @Override
+    public void openFailed(ServerSession session, String remotePath, Path localPath, boolean isDirectory,
+                           Throwable thrown) {
+        stop(Operation.OPEN, session, 0L);
+    }
+
+    @Override
+    public void reading(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen) {
+        start(Operation.READ);
+    }
+
+    @Override
+    public void read(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                     byte[] data, int dataOffset, int dataLen, int readLen, Throwable thrown) {
+        final long bytes = Math.max(0, readLen);
+        stop(Operation.READ, session, bytes);
+        transfer(session, bytes, 0L);
+    }
+
+    @Override
+    public void writing(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen) {
+        start(Operation.WRITE);
+    }
+
+    @Override
+    public void written(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen, Throwable thrown) {
+        final long bytes = thrown == null ? dataLen : 0L;
+        stop(Operation.WRITE, session, bytes);
+        transfer(session, 0L, bytes);
+    }
+
+    @Override
+    public void closing(ServerSession session, String remoteHandle, Handle localHandle) {
+        start(Operation.CLOSE);
+    }
+
+    @Override
+    public void closed(ServerSession session, String remoteHandle, Handle localHandle, Throwable thrown) {
+        stop(Operation.CLOSE, session, 0L);
+    }
+
+    private void start(Operation operation) {
+        startNanos.get()[operation.ordinal()] = System.nanoTime();
+    }
+
+    private void stop(Operation operation, ServerSession session, long bytes) {
+        final long[] starts = startNanos.get();
+        final long start = starts[operation.ordinal()];
+        if (start == 0L) {
+            return;
+        }
+        starts[operation.ordinal()] = 0L;
+        record(operation, session, System.nanoTime() - start, bytes);
+    }
+
+    private void transfer(ServerSession session, long read, long written) {
+        if (read == 0L && written == 0L) {
+            return;
+        }
+        final Transfer sessionTransfer = sessions.get(session);
+        if (sessionTransfer != null) {
+            sessionTransfer.add(read, written);
+        }
+        final String username = session.getUsername();
+        if (username != null) {
+            users.computeIfAbsent(username, u -> new Transfer()).add(read, written);
+        }
+    }
+
+    private static class Transfer {
+
+        private final LongAdder read = new LongAdder();
+        private final LongAdder written = new LongAdder();
+
+        private void add(long readBytes, long writtenBytes) {
+            read.add(readBytes);
+            written.add(writtenBytes);
+        }
+    }
+
+    public static class Snapshot {
+
+        private final int activeSessions;
+        private final long totalSessions;
+        private final LatencyHistogram.Snapshot handshake;
+        private final Map<Operation, LatencyHistogram.Snapshot> operations;
+        private final List<SessionTransfer> sessions;
+        private final Map<String, UserTransfer> users;
+
+        private Snapshot(int activeSessions, long totalSessions, LatencyHistogram.Snapshot handshake,
+                         Map<Operation, LatencyHistogram.Snapshot> operations, List<SessionTransfer> sessions,
+                         Map<String, UserTransfer> users) {
+            this.activeSessions = activeSessions;
+            this.totalSessions = totalSessions;
+            this.handshake = handshake;
+            this.operations = Collections.unmodifiableMap(operations);
+            this.sessions = Collections.unmodifiableList(sessions);
+            this.users = Collections.unmodifiableMap(users);
+        }
+
+        public int getActiveSessions() {
+            return activeSessions;
+        }
+
+        public long getTotalSessions() {
+            return totalSessions;
+        }
+
+        public LatencyHistogram.Snapshot getHandshake() {
+            return handshake;
+        }
+
+        public LatencyHistogram.Snapshot getOperation(Operation operation) {
+            return operations.get(operation);
+        }
+
+        public Map<Operation, LatencyHistogram.Snapshot> getOperations() {
+            return operations;
+        }
+
+        public List<SessionTransfer> getSessions() {
+            return sessions;
+        }
+
+        public Map<String, UserTransfer> getUsers() {
+            return users;
+        }
+    }
+
+    public static class SessionTransfer {
+
+        private final long sessionId;
+        private final String username;
+        private final SocketAddress remoteAddress;
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        private SessionTransfer(long sessionId, String username, SocketAddress remoteAddress,
+                                long bytesRead, long bytesWritten) {
+            this.sessionId = sessionId;
+            this.username = username;
+            this.remoteAddress = remoteAddress;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public long getSessionId() {
+            return sessionId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+
+    public static class UserTransfer {
+
+        private final String username;
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        private UserTransfer(String username, long bytesRead, long bytesWritten) {
+            this.username = username;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+}
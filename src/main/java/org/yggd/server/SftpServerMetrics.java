@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.common.AttributeStore;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.FileHandle;
+import org.apache.sshd.server.subsystem.sftp.Handle;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
+import org.yggd.metrics.ServerMetrics;
+
+import java.nio.file.Path;
+
+/**
+ * Always installed listener feeding {@link ServerMetrics}: SSH sessions are connections, SFTP open/read/write/close
+ * are operations, and bytes are file data written (received) or read (sent) by clients.
+ */
+class SftpServerMetrics implements SessionListener, SftpEventListener {
+
+    private static final AttributeStore.AttributeKey<Boolean> COUNTED = new AttributeStore.AttributeKey<>();
+
+    private final ServerMetrics metrics = new ServerMetrics("sftp");
+    // one in-flight operation per subsystem thread, same as SftpMetrics.
+    private final ThreadLocal<long[]> start = ThreadLocal.withInitial(() -> new long[1]);
+
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void sessionCreated(Session session) {
+        session.setAttribute(COUNTED, Boolean.TRUE);
+        metrics.connectionOpened();
+    }
+
+    @Override
+    public void sessionClosed(Session session) {
+        if (session.removeAttribute(COUNTED) != null) {
+            metrics.connectionClosed();
+        }
+    }
+
+    @Override
+    public void sessionException(Session session, Throwable t) {
+        metrics.error();
+    }
+
+    @Override
+    public void opening(ServerSession session, String remoteHandle, Handle localHandle) {
+        start();
+    }
+
+    @Override
+    public void open(ServerSession session, String remoteHandle, Handle localHandle) {
+        stop(null);
+    }
+
+    @Override
+    public void openFailed(ServerSession session, String remotePath, Path localPath, boolean isDirectory,
+                           Throwable thrown) {
+        stop(thrown);
+    }
+
+    @Override
+    public void reading(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen) {
+        start();
+    }
+
+    @Override
+    public void read(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                     byte[] data, int dataOffset, int dataLen, int readLen, Throwable thrown) {
+        stop(thrown);
+        metrics.bytesSent(readLen);
+    }
+
+    @Override
+    public void writing(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen) {
+        start();
+    }
+
+    @Override
+    public void written(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen, Throwable thrown) {
+        stop(thrown);
+        if (thrown == null) {
+            metrics.bytesReceived(dataLen);
+        }
+    }
+
+    @Override
+    public void closing(ServerSession session, String remoteHandle, Handle localHandle) {
+        start();
+    }
+
+    @Override
+    public void closed(ServerSession session, String remoteHandle, Handle localHandle, Throwable thrown) {
+        stop(thrown);
+    }
+
+    private void start() {
+        metrics.operationStarted();
+        start.get()[0] = System.nanoTime();
+    }
+
+    private void stop(Throwable thrown) {
+        final long[] starts = start.get();
+        if (starts[0] != 0L) {
+            metrics.operation(System.nanoTime() - starts[0]);
+            starts[0] = 0L;
+        }
+        if (thrown != null) {
+            metrics.error();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.common.AttributeStore;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.FileHandle;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SftpSessionLimiter implements SessionListener, SftpEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SftpSessionLimiter.class);
+
+    private static final AttributeStore.AttributeKey<TokenBucket> SESSION_BUCKET = new AttributeStore.AttributeKey<>();
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final int maxSessions;
+    private final long sessionBytesPerSecond;
+    private final TokenBucket globalBucket;
+
+    SftpSessionLimiter(int maxSessions, long sessionBytesPerSecond, long globalBytesPerSecond) {
+        this.maxSessions = maxSessions;
+        this.sessionBytesPerSecond = sessionBytesPerSecond;
+        this.globalBucket = globalBytesPerSecond > 0 ? new TokenBucket(globalBytesPerSecond) : null;
+    }
+
+    @Override
+    public void sessionCreated(Session session) {
+        final int active = activeSessions.incrementAndGet();
+        if (maxSessions > 0 && active > maxSessions) {
+            logger.warn("reject session, max concurrent sessions({}) exceeded.", maxSessions);
+            session.close(true);
+            return;
+        }
+        if (sessionBytesPerSecond > 0) {
+            session.setAttribute(SESSION_BUCKET, new TokenBucket(sessionBytesPerSecond));
+        }
+    }
+
+    @Override
+    public void sessionClosed(Session session) {
+        activeSessions.decrementAndGet();
+    }
+
+    @Override
+    public void read(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                     byte[] data, int dataOffset, int dataLen, int readLen, Throwable thrown) throws IOException {
+        throttle(session, readLen);
+    }
+
+    @Override
+    public void writing(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                        byte[] data, int dataOffset, int dataLen) throws IOException {
+        throttle(session, dataLen);
+    }
+
+    int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    private void throttle(ServerSession session, int length) throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        try {
+            final TokenBucket sessionBucket = session.getAttribute(SESSION_BUCKET);
+            if (sessionBucket != null) {
+                sessionBucket.acquire(length);
+            }
+            if (globalBucket != null) {
+                globalBucket.acquire(length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while throttling transfer.");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import java.util.Arrays;
+
+/**
+ * Generates file content for a position on demand, used by {@link SyntheticFiles}.
+ */
+@FunctionalInterface
+public interface SyntheticContent {
+
+    void fill(long position, byte[] buf, int offset, int length);
+
+    static SyntheticContent zeros() {
+        return (position, buf, offset, length) -> Arrays.fill(buf, offset, offset + length, (byte) 0);
+    }
+
+    static SyntheticContent pattern(byte[] pattern) {
+        if (pattern == null || pattern.length == 0) {
+            throw new IllegalArgumentException("pattern must not be empty.");
+        }
+        final byte[] copy = pattern.clone();
+        return (position, buf, offset, length) -> {
+            int p = (int) (position % copy.length);
+            for (int i = 0; i < length; i++) {
+                buf[offset + i] = copy[p];
+                if (++p == copy.length) {
+                    p = 0;
+                }
+            }
+        };
+    }
+
+    /**
+     * Seeded pseudo-random content, the same seed always yields the same bytes at the same position.
+     */
+    static SyntheticContent random(long seed) {
+        return (position, buf, offset, length) -> {
+            long block = position >>> 3;
+            long value = mix(seed, block);
+            for (int i = 0; i < length; i++) {
+                final long current = position + i;
+                if ((current >>> 3) != block) {
+                    block = current >>> 3;
+                    value = mix(seed, block);
+                }
+                buf[offset + i] = (byte) (value >>> ((current & 7) << 3));
+            }
+        };
+    }
+
+    static long mix(long seed, long block) {
+        // splitmix64 finalizer.
+        long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
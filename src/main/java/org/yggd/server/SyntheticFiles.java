@@ -0,0 +1,350 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Declares generated files served by the embedded (S)FTP servers without reading the disk,
+ * and optionally discards uploads while counting their bytes.
+ */
+public class SyntheticFiles {
+
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    private final Map<String, SyntheticFile> files = new ConcurrentHashMap<>();
+    private final LongAdder discardedBytes = new LongAdder();
+    private volatile boolean discardUploads = false;
+
+    public SyntheticFiles file(String path, long size, SyntheticContent content) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative:" + size);
+        }
+        final String normalized = normalize(path);
+        files.put(normalized, new SyntheticFile(normalized, size, content));
+        return this;
+    }
+
+    public SyntheticFiles discardUploads(boolean discardUploads) {
+        this.discardUploads = discardUploads;
+        return this;
+    }
+
+    public long getDiscardedBytes() {
+        return discardedBytes.sum();
+    }
+
+    boolean isDiscardUploads() {
+        return discardUploads;
+    }
+
+    SyntheticFile find(String path) {
+        return files.get(normalize(path));
+    }
+
+    Collection<SyntheticFile> files() {
+        return files.values();
+    }
+
+    List<SyntheticFile> children(String directory) {
+        final String parent = normalize(directory);
+        final List<SyntheticFile> children = new ArrayList<>();
+        files.values().forEach(f -> {
+            if (f.getParent().equals(parent)) {
+                children.add(f);
+            }
+        });
+        return children;
+    }
+
+    SeekableByteChannel newDiscardChannel() {
+        return new DiscardChannel(discardedBytes);
+    }
+
+    OutputStream newDiscardOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                discardedBytes.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                discardedBytes.add(len);
+            }
+        };
+    }
+
+    static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.contains("//")) {
+            normalized = normalized.replace("//", "/");
+        }
+        if (!normalized.startsWith("/")) {
+            normalized = "/" + normalized;
+        }
+        if (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    static class SyntheticFile {
+
+        private final String path;
+        private final long size;
+        private final SyntheticContent content;
+        private final long lastModified = System.currentTimeMillis();
+
+        private SyntheticFile(String path, long size, SyntheticContent content) {
+            this.path = path;
+            this.size = size;
+            this.content = content;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        String getParent() {
+            final int index = path.lastIndexOf('/');
+            return index <= 0 ? "/" : path.substring(0, index);
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        SeekableByteChannel newChannel() {
+            return new ContentChannel(this);
+        }
+
+        InputStream newInputStream(long offset) {
+            return new ContentInputStream(this, offset);
+        }
+
+        int read(long position, byte[] buf, int offset, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            final int len = (int) Math.min(length, size - position);
+            content.fill(position, buf, offset, len);
+            return len;
+        }
+    }
+
+    private static class ContentChannel implements SeekableByteChannel {
+
+        private final SyntheticFile file;
+        private long position = 0L;
+        private volatile boolean open = true;
+
+        private ContentChannel(SyntheticFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws ClosedChannelException {
+            ensureOpen();
+            if (position >= file.getSize()) {
+                return -1;
+            }
+            int total = 0;
+            if (dst.hasArray()) {
+                total = file.read(position, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (total > 0) {
+                    dst.position(dst.position() + total);
+                }
+            } else {
+                final byte[] chunk = new byte[Math.min(CHUNK_SIZE, dst.remaining())];
+                while (dst.hasRemaining()) {
+                    final int len = file.read(position + total, chunk, 0, Math.min(chunk.length, dst.remaining()));
+                    if (len < 0) {
+                        break;
+                    }
+                    dst.put(chunk, 0, len);
+                    total += len;
+                }
+            }
+            position += Math.max(0, total);
+            return total;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            this.position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return file.getSize();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+
+    private static class DiscardChannel implements SeekableByteChannel {
+
+        private final LongAdder counter;
+        private long position = 0L;
+        private long size = 0L;
+        private volatile boolean open = true;
+
+        private DiscardChannel(LongAdder counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            return -1;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            final int len = src.remaining();
+            src.position(src.limit());
+            counter.add(len);
+            position += len;
+            size = Math.max(size, position);
+            return len;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            this.position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            this.size = Math.min(this.size, size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    private static class ContentInputStream extends InputStream {
+
+        private final SyntheticFile file;
+        private long position;
+
+        private ContentInputStream(SyntheticFile file, long offset) {
+            this.file = file;
+            this.position = offset;
+        }
+
+        @Override
+        public int read() {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            final int read = file.read(position, b, off, len);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0L, Math.min(n, file.getSize() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, file.getSize() - position));
+        }
+    }
+}
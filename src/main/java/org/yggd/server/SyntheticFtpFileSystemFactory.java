@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps a {@link FileSystemFactory} to serve {@link SyntheticFiles} and discard uploads.
+ */
+class SyntheticFtpFileSystemFactory implements FileSystemFactory {
+
+    private final FileSystemFactory delegate;
+    private final SyntheticFiles syntheticFiles;
+
+    SyntheticFtpFileSystemFactory(FileSystemFactory delegate, SyntheticFiles syntheticFiles) {
+        this.delegate = delegate;
+        this.syntheticFiles = syntheticFiles;
+    }
+
+    @Override
+    public FileSystemView createFileSystemView(User user) throws FtpException {
+        return new SyntheticFileSystemView(delegate.createFileSystemView(user), syntheticFiles);
+    }
+
+    private static class SyntheticFileSystemView extends DelegatingFileSystemView {
+
+        private final SyntheticFiles syntheticFiles;
+
+        private SyntheticFileSystemView(FileSystemView delegate, SyntheticFiles syntheticFiles) {
+            super(delegate);
+            this.syntheticFiles = syntheticFiles;
+        }
+
+        @Override
+        FtpFile wrap(FtpFile file) {
+            final SyntheticFiles.SyntheticFile syntheticFile = syntheticFiles.find(file.getAbsolutePath());
+            if (syntheticFile != null) {
+                return new SyntheticFtpFile(file, syntheticFile);
+            }
+            return new SyntheticAwareFtpFile(file, syntheticFiles);
+        }
+    }
+
+    private static class SyntheticAwareFtpFile extends DelegatingFtpFile {
+
+        private final SyntheticFiles syntheticFiles;
+
+        private SyntheticAwareFtpFile(FtpFile delegate, SyntheticFiles syntheticFiles) {
+            super(delegate);
+            this.syntheticFiles = syntheticFiles;
+        }
+
+        @Override
+        public List<? extends FtpFile> listFiles() {
+            final List<? extends FtpFile> files = super.listFiles();
+            if (files == null) {
+                return null;
+            }
+            final List<FtpFile> list = new ArrayList<>(files);
+            final Set<String> names = files.stream().map(FtpFile::getName).collect(Collectors.toSet());
+            syntheticFiles.children(getAbsolutePath()).forEach(f -> {
+                if (!names.contains(f.getName())) {
+                    list.add(new SyntheticFtpFile(this, f));
+                }
+            });
+            return list;
+        }
+
+        @Override
+        public OutputStream createOutputStream(long offset) throws IOException {
+            if (syntheticFiles.isDiscardUploads()) {
+                return syntheticFiles.newDiscardOutputStream();
+            }
+            return super.createOutputStream(offset);
+        }
+    }
+
+    private static class SyntheticFtpFile implements FtpFile {
+
+        private final FtpFile origin;
+        private final SyntheticFiles.SyntheticFile file;
+
+        private SyntheticFtpFile(FtpFile origin, SyntheticFiles.SyntheticFile file) {
+            this.origin = origin;
+            this.file = file;
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return file.getPath();
+        }
+
+        @Override
+        public String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public boolean isHidden() {
+            return false;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isFile() {
+            return true;
+        }
+
+        @Override
+        public boolean doesExist() {
+            return true;
+        }
+
+        @Override
+        public boolean isReadable() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return false;
+        }
+
+        @Override
+        public boolean isRemovable() {
+            return false;
+        }
+
+        @Override
+        public String getOwnerName() {
+            return origin.getOwnerName();
+        }
+
+        @Override
+        public String getGroupName() {
+            return origin.getGroupName();
+        }
+
+        @Override
+        public int getLinkCount() {
+            return 1;
+        }
+
+        @Override
+        public long getLastModified() {
+            return file.getLastModified();
+        }
+
+        @Override
+        public boolean setLastModified(long time) {
+            return false;
+        }
+
+        @Override
+        public long getSize() {
+            return file.getSize();
+        }
+
+        @Override
+        public Object getPhysicalFile() {
+            return file;
+        }
+
+        @Override
+        public boolean mkdir() {
+            return false;
+        }
+
+        @Override
+        public boolean delete() {
+            return false;
+        }
+
+        @Override
+        public boolean move(FtpFile destination) {
+            return false;
+        }
+
+        @Override
+        public List<? extends FtpFile> listFiles() {
+            return null;
+        }
+
+        @Override
+        public OutputStream createOutputStream(long offset) throws IOException {
+            throw new IOException("synthetic file is read only:" + file.getPath());
+        }
+
+        @Override
+        public InputStream createInputStream(long offset) {
+            return file.newInputStream(offset);
+        }
+    }
+}
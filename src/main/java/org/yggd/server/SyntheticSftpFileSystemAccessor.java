@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.subsystem.sftp.SftpEventListenerManager;
+import org.apache.sshd.server.subsystem.sftp.SftpFileSystemAccessor;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Serves synthetic file content and adds synthetic entries to listings of existing directories.
+ * Stat of synthetic files is answered from {@link #attributes(SyntheticFiles.SyntheticFile)}, nothing is written to disk.
+ */
+class SyntheticSftpFileSystemAccessor implements SftpFileSystemAccessor {
+
+    private final SftpFileSystemAccessor delegate;
+    private final SyntheticFiles syntheticFiles;
+
+    SyntheticSftpFileSystemAccessor(SftpFileSystemAccessor delegate, SyntheticFiles syntheticFiles) {
+        this.delegate = delegate;
+        this.syntheticFiles = syntheticFiles;
+    }
+
+    @Override
+    public SeekableByteChannel openFile(ServerSession session, SftpEventListenerManager subsystem, Path file,
+                                        String handle, Set<? extends OpenOption> options,
+                                        FileAttribute<?>... attrs) throws IOException {
+        final boolean write = options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND);
+        if (write && syntheticFiles.isDiscardUploads()) {
+            return syntheticFiles.newDiscardChannel();
+        }
+        final SyntheticFiles.SyntheticFile syntheticFile =
+                syntheticFiles.find(file.toAbsolutePath().normalize().toString());
+        if (syntheticFile != null && !write) {
+            return syntheticFile.newChannel();
+        }
+        return delegate.openFile(session, subsystem, file, handle, options, attrs);
+    }
+
+    @Override
+    public DirectoryStream<Path> openDirectory(ServerSession session, SftpEventListenerManager subsystem,
+                                               Path dir, String handle) throws IOException {
+        final DirectoryStream<Path> stream = delegate.openDirectory(session, subsystem, dir, handle);
+        final Deque<SyntheticFiles.SyntheticFile> children =
+                new ArrayDeque<>(syntheticFiles.children(dir.toAbsolutePath().normalize().toString()));
+        if (children.isEmpty()) {
+            return stream;
+        }
+        return new DirectoryStream<Path>() {
+            @Override
+            public Iterator<Path> iterator() {
+                return new SyntheticIterator(dir, stream.iterator(), children);
+            }
+
+            @Override
+            public void close() throws IOException {
+                stream.close();
+            }
+        };
+    }
+
+    static NavigableMap<String, Object> attributes(SyntheticFiles.SyntheticFile file) {
+        final NavigableMap<String, Object> attrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final FileTime lastModified = FileTime.fromMillis(file.getLastModified());
+        attrs.put("size", file.getSize());
+        attrs.put("isRegularFile", Boolean.TRUE);
+        attrs.put("isDirectory", Boolean.FALSE);
+        attrs.put("isSymbolicLink", Boolean.FALSE);
+        attrs.put("isOther", Boolean.FALSE);
+        attrs.put("permissions", EnumSet.of(PosixFilePermission.OWNER_READ,
+                PosixFilePermission.GROUP_READ, PosixFilePermission.OTHERS_READ));
+        attrs.put("lastModifiedTime", lastModified);
+        attrs.put("lastAccessTime", lastModified);
+        attrs.put("creationTime", lastModified);
+        return attrs;
+    }
+
+    /**
+     * Real entries first, then synthetic children whose names were not among them.
+     */
+    private static class SyntheticIterator implements Iterator<Path> {
+
+        private final Path dir;
+        private final Iterator<Path> entries;
+        private final Deque<SyntheticFiles.SyntheticFile> children;
+
+        SyntheticIterator(Path dir, Iterator<Path> entries, Deque<SyntheticFiles.SyntheticFile> children) {
+            this.dir = dir;
+            this.entries = entries;
+            this.children = children;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext() || !children.isEmpty();
+        }
+
+        @Override
+        public Path next() {
+            if (entries.hasNext()) {
+                final Path entry = entries.next();
+                final Path name = entry.getFileName();
+                if (name != null) {
+                    children.removeIf(f -> f.getName().equals(name.toString()));
+                }
+                return entry;
+            }
+            if (children.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return dir.resolve(children.poll().getName());
+        }
+    }
+}
@@ -18,17 +18,28 @@ package org.yggd.server;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelGroupFuture;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.yggd.metrics.ServerMetrics;
+import org.yggd.runtime.EmbeddedRuntime;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -38,6 +49,7 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
     private Supplier<byte[]> active;
     private Consumer<byte[]> read;
     private boolean closeFromServer = false;
+    private EmbeddedRuntime runtime;
 
     TcpEmbeddedServerBuilder() {}
 
@@ -61,26 +73,43 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
         return this;
     }
 
+    /**
+     * Runs the server on the runtime's event loops instead of its own.
+     */
+    public TcpEmbeddedServerBuilder runtime(EmbeddedRuntime runtime) {
+        this.runtime = runtime;
+        return this;
+    }
+
     @Override
-    public EmbeddedServer build() {
-        TcpServerImpl tcpServer = new TcpServerImpl(port);
+    public ListeningServer build() {
+        TcpServerImpl tcpServer = runtime != null
+                ? new TcpServerImpl(port, runtime.eventLoopGroup(), true)
+                : new TcpServerImpl(port, new NioEventLoopGroup(), false);
         tcpServer.active(active);
         tcpServer.read(read);
         tcpServer.setCloseFromServer(closeFromServer);
         return tcpServer;
     }
 
-    public static class TcpServerImpl implements EmbeddedServer {
+    public static class TcpServerImpl implements ListeningServer {
 
         private final int port;
         private volatile boolean isRunning = false;
-        private final EventLoopGroup group = new NioEventLoopGroup();
+        private volatile Channel serverChannel;
+        private final EventLoopGroup group;
+        private final boolean sharedGroup;
+        // accepted channels, closed on stop when the event loops are shared.
+        private final ChannelGroup children = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        private final ServerMetrics metrics = new ServerMetrics("tcp");
         private Supplier<byte[]> activeCallback;
         private Consumer<byte[]> readCallback;
         private boolean closeFromServer;
 
-        private TcpServerImpl(int port) {
+        private TcpServerImpl(int port, EventLoopGroup group, boolean sharedGroup) {
             this.port = port;
+            this.group = group;
+            this.sharedGroup = sharedGroup;
         }
 
         private void active(Supplier<byte[]> active) {
@@ -104,14 +133,23 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
-                            ch.pipeline().addLast(new TcpServerHandler(activeCallback, readCallback, closeFromServer));
+                            children.add(ch);
+                            ch.pipeline().addLast(new TcpServerHandler(activeCallback, readCallback, closeFromServer, metrics));
                         }
                     });
+            final ChannelFuture bindFuture;
             try {
-                bootstrap.bind().sync();
+                bindFuture = bootstrap.bind().await();
             } catch (InterruptedException e) {
-                // through interrupt.
+                Thread.currentThread().interrupt();
+                releaseGroup();
+                throw new EmbeddedServerException("interrupted while binding port " + port, e);
+            }
+            if (!bindFuture.isSuccess()) {
+                releaseGroup();
+                throw new EmbeddedServerException("failed to bind port " + port, bindFuture.cause());
             }
+            serverChannel = bindFuture.channel();
             isRunning = true;
         }
 
@@ -119,16 +157,83 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
         public void stop() {
             try {
                 isRunning = false;
-                group.shutdownGracefully().sync();
+                final Channel channel = serverChannel;
+                serverChannel = null;
+                if (sharedGroup) {
+                    if (channel != null) {
+                        channel.close().sync();
+                    }
+                    children.close().await();
+                } else {
+                    group.shutdownGracefully().sync();
+                }
             } catch (InterruptedException e) {
                 throw new IllegalStateException(e);
             }
         }
 
+        /**
+         * In-flight operations are running read callbacks, idle connections are closed once they finished.
+         */
+        @Override
+        public long stop(Duration drainTimeout) {
+            final long deadline = Drain.deadline(drainTimeout);
+            isRunning = false;
+            final Channel channel = serverChannel;
+            serverChannel = null;
+            try {
+                if (channel != null) {
+                    channel.close().sync();
+                }
+                final long cutOff = Drain.await(metrics::getInFlightOperations, deadline);
+                // a callback still running at the deadline delays its own channel's close, don't wait for it.
+                final ChannelGroupFuture closeFuture = children.close();
+                if (cutOff == 0L) {
+                    closeFuture.await();
+                }
+                if (!sharedGroup) {
+                    // already drained, no quiet period.
+                    final Future<?> shutdownFuture = group.shutdownGracefully(0L, 0L, TimeUnit.MILLISECONDS);
+                    if (cutOff == 0L) {
+                        shutdownFuture.await();
+                    }
+                }
+                return cutOff;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                children.close();
+                releaseGroup();
+                throw new EmbeddedServerException("interrupted while draining port " + port, e);
+            }
+        }
+
+        private void releaseGroup() {
+            if (!sharedGroup) {
+                group.shutdownGracefully();
+            }
+        }
+
         @Override
         public boolean isRunning() {
             return isRunning;
         }
+
+        @Override
+        public InetSocketAddress boundAddress() {
+            final Channel channel = serverChannel;
+            if (channel == null) {
+                throw new IllegalStateException("server is not running.");
+            }
+            return (InetSocketAddress) channel.localAddress();
+        }
+
+        /**
+         * Each read callback is an operation, bytes are the raw payload in both directions.
+         */
+        @Override
+        public ServerMetrics metrics() {
+            return metrics;
+        }
     }
 
     private static class TcpServerHandler extends ChannelInboundHandlerAdapter {
@@ -138,16 +243,27 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
         private final Supplier<byte[]> active;
         private final Consumer<byte[]> read;
         private final boolean closeFromServer;
+        private final ServerMetrics metrics;
 
-        private TcpServerHandler(Supplier<byte[]> active, Consumer<byte[]> read, boolean closeFromServer) {
+        private TcpServerHandler(Supplier<byte[]> active, Consumer<byte[]> read, boolean closeFromServer,
+                                 ServerMetrics metrics) {
             this.active = active;
             this.read = read;
             this.closeFromServer = closeFromServer;
+            this.metrics = metrics;
         }
 
         @Override
         public void channelActive(ChannelHandlerContext ctx) {
-            ctx.writeAndFlush(Unpooled.copiedBuffer(active.get()));
+            metrics.connectionOpened();
+            final byte[] payload = active.get();
+            metrics.bytesSent(payload.length);
+            ctx.writeAndFlush(Unpooled.copiedBuffer(payload));
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            metrics.connectionClosed();
         }
 
         @Override
@@ -160,7 +276,14 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
                 array = new byte[buf.readableBytes()];
                 buf.getBytes(buf.readerIndex(), array);
             }
-            read.accept(array);
+            metrics.bytesReceived(buf.readableBytes());
+            metrics.operationStarted();
+            final long start = System.nanoTime();
+            try {
+                read.accept(array);
+            } finally {
+                metrics.operation(System.nanoTime() - start);
+            }
         }
 
         @Override
@@ -173,6 +296,7 @@ public class TcpEmbeddedServerBuilder implements EmbeddedServerBuilder {
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
             logger.error("exception occurs.", cause);
+            metrics.error();
             ctx.close();
         }
     }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Wraps a {@link FileSystemFactory} to cap the bandwidth of all transfers of the server with one {@link TokenBucket}.
+ */
+class ThrottlingFtpFileSystemFactory implements FileSystemFactory {
+
+    private final FileSystemFactory delegate;
+    private final TokenBucket bucket;
+
+    ThrottlingFtpFileSystemFactory(FileSystemFactory delegate, long bytesPerSecond) {
+        this.delegate = delegate;
+        this.bucket = new TokenBucket(bytesPerSecond);
+    }
+
+    @Override
+    public FileSystemView createFileSystemView(User user) throws FtpException {
+        return new DelegatingFileSystemView(delegate.createFileSystemView(user)) {
+            @Override
+            FtpFile wrap(FtpFile file) {
+                return new ThrottlingFtpFile(file, bucket);
+            }
+        };
+    }
+
+    private static void acquire(TokenBucket bucket, long bytes) throws InterruptedIOException {
+        try {
+            bucket.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while throttling transfer.");
+        }
+    }
+
+    private static class ThrottlingFtpFile extends DelegatingFtpFile {
+
+        private final TokenBucket bucket;
+
+        private ThrottlingFtpFile(FtpFile delegate, TokenBucket bucket) {
+            super(delegate);
+            this.bucket = bucket;
+        }
+
+        @Override
+        public InputStream createInputStream(long offset) throws IOException {
+            return new FilterInputStream(super.createInputStream(offset)) {
+                @Override
+                public int read() throws IOException {
+                    final int b = in.read();
+                    if (b >= 0) {
+                        acquire(bucket, 1L);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    final int read = in.read(b, off, len);
+                    if (read > 0) {
+                        acquire(bucket, read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream createOutputStream(long offset) throws IOException {
+            return new FilterOutputStream(super.createOutputStream(offset)) {
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(bucket, 1L);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    acquire(bucket, len);
+                    out.write(b, off, len);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.yggd.server;
+
+import java.util.concurrent.TimeUnit;
+
+class TokenBucket {
+
+    private final long bytesPerSecond;
+    private final long capacity;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long bytesPerSecond) {
+        this(bytesPerSecond, bytesPerSecond);
+    }
+
+    TokenBucket(long bytesPerSecond, long capacity) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive:" + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    void acquire(long permits) throws InterruptedException {
+        if (permits <= 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            refill();
+            // allow debt so that a single chunk larger than the capacity still passes.
+            tokens -= permits;
+            waitNanos = tokens < 0 ? (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond) : 0L;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        final double refilled = (now - lastRefill) * (double) bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(capacity, tokens + refilled);
+        lastRefill = now;
+    }
+}
@@ -16,18 +16,41 @@
 package org.yggd.server;
 
 import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.util.TrustManagerUtils;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.yggd.client.TransferResult;
+import org.yggd.client.TransferSummary;
+import org.yggd.client.ftp.FtpClientBuilder;
+import org.yggd.client.ftp.FtpClientImpl;
+import org.yggd.metrics.ServerMetrics;
+import org.yggd.runtime.EmbeddedRuntime;
 import org.yggd.server.EmbeddedServer;
 import org.yggd.server.ServerBuilder;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -35,8 +58,14 @@ import static org.junit.Assert.*;
 public class FtpEmbeddedServerBuilderTest {
 
     private static final int PORT = 10021;
+    private static final int IN_MEMORY_PORT = 10024;
+    private static final int LIMITED_PORT = 10025;
     private static final String USER = "user1";
     private static final String PASSWORD = "password";
+    private static final String SYNTHETIC = "synthetic.dat";
+    private static final int SYNTHETIC_SIZE = 1024 * 1024 + 3;
+
+    private static final FileReadCache READ_CACHE = new FileReadCache(1024 * 1024);
 
     private static EmbeddedServer ftpServer;
     private static Path directory;
@@ -48,7 +77,10 @@ public class FtpEmbeddedServerBuilderTest {
             u.setName("user1");
             u.setPassword("password");
             u.setHomeDirectory(directory.toString());
-        }).filesystem(f -> f.setCreateHome(true)).build();
+        }).filesystem(f -> f.setCreateHome(true))
+                .readCache(READ_CACHE)
+                .syntheticFiles(new SyntheticFiles().file(SYNTHETIC, SYNTHETIC_SIZE, SyntheticContent.random(42L)))
+                .build();
         ftpServer.start();
     }
 
@@ -105,6 +137,629 @@ public class FtpEmbeddedServerBuilderTest {
         assertThat(baos.toByteArray(), is(Files.readAllBytes(tempFile.toPath())));
     }
 
+    @Test
+    public void testFtpSyntheticGet() throws Exception {
+        final FTPClient client = new FTPClient();
+        client.connect("localhost", PORT);
+        client.login(USER, PASSWORD);
+        client.setFileType(FTPClient.BINARY_FILE_TYPE);
+
+        assertTrue(
+            Arrays.stream(client.listFiles()).anyMatch(f ->
+                f.getName().equals(SYNTHETIC) && f.getSize() == SYNTHETIC_SIZE
+            )
+        );
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        client.retrieveFile(SYNTHETIC, baos);
+        client.disconnect();
+
+        final byte[] expected = new byte[SYNTHETIC_SIZE];
+        SyntheticContent.random(42L).fill(0L, expected, 0, expected.length);
+        assertThat(baos.toByteArray(), is(expected));
+        assertFalse(new File(directory.toFile(), SYNTHETIC).exists());
+    }
+
+    @Test
+    public void testFtpReadCache() throws Exception {
+        final File tempFile = createTempFile(directory);
+        final FTPClient client = new FTPClient();
+        client.connect("localhost", PORT);
+        client.login(USER, PASSWORD);
+        final long hits = READ_CACHE.getHits();
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            client.retrieveFile(tempFile.getName(), baos);
+            assertThat(baos.toByteArray(), is(Files.readAllBytes(tempFile.toPath())));
+        }
+
+        // upload invalidates cached content.
+        client.storeFile(tempFile.getName(), new ByteArrayInputStream("updated".getBytes()));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        client.retrieveFile(tempFile.getName(), baos);
+        client.disconnect();
+        assertThat(READ_CACHE.getHits() - hits, is(2L));
+        assertThat(new String(baos.toByteArray()), is("updated"));
+    }
+
+    @Test
+    public void testFtpInMemoryFilesystem() throws Exception {
+        final InMemoryFileSystemFactory[] fileSystem = new InMemoryFileSystemFactory[1];
+        final EmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT).user(u -> {
+            u.setName(USER);
+            u.setPassword(PASSWORD);
+            u.setHomeDirectory("/home/" + USER);
+        }).inMemoryFilesystem(f -> {
+            f.setCapacity(1000L);
+            fileSystem[0] = f;
+        }).build();
+        server.start();
+        try {
+            final FTPClient client = new FTPClient();
+            client.connect("localhost", IN_MEMORY_PORT);
+            client.login(USER, PASSWORD);
+            client.setFileType(FTPClient.BINARY_FILE_TYPE);
+            assertTrue(client.makeDirectory("dir"));
+            assertTrue(client.storeFile("dir/a.dat", new ByteArrayInputStream(new byte[600])));
+            assertThat(fileSystem[0].getUsedBytes(), is(600L));
+
+            // over capacity, the existing content is kept.
+            assertFalse(client.storeFile("dir/b.dat", new ByteArrayInputStream(new byte[600])));
+            assertTrue(client.storeFile("dir/a.dat", new ByteArrayInputStream("replaced".getBytes())));
+            assertThat(fileSystem[0].getUsedBytes(), is(8L));
+
+            assertTrue(client.rename("dir/a.dat", "dir/c.dat"));
+            assertTrue(client.changeWorkingDirectory("dir"));
+            assertThat(Arrays.stream(client.listFiles()).filter(f -> f.getName().equals("c.dat")).count(), is(1L));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            client.retrieveFile("c.dat", baos);
+            assertThat(new String(baos.toByteArray()), is("replaced"));
+            assertTrue(client.deleteFile("c.dat"));
+            assertThat(fileSystem[0].getUsedBytes(), is(0L));
+            client.disconnect();
+        } finally {
+            server.stop();
+        }
+        assertFalse(new File("/home/" + USER + "/dir").exists());
+    }
+
+    @Test
+    public void testFtpInMemoryUserManager() throws Exception {
+        final List<User> tenants = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            final BaseUser user = new BaseUser();
+            user.setName("tenant" + i);
+            user.setPassword("secret" + i);
+            user.setHomeDirectory("/tenant" + i);
+            tenants.add(user);
+        }
+        final InMemoryUserManager[] userManager = new InMemoryUserManager[1];
+        final EmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT)
+                .inMemoryUserManager(m -> {
+                    m.saveAll(tenants);
+                    userManager[0] = m;
+                })
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .build();
+        server.start();
+        try {
+            assertThat(userManager[0].size(), is(10_001));
+            final FTPClient client = new FTPClient();
+            client.connect("localhost", IN_MEMORY_PORT);
+            assertTrue(client.login("tenant9999", "secret9999"));
+            assertThat(client.printWorkingDirectory(), is("/"));
+            client.disconnect();
+
+            client.connect("localhost", IN_MEMORY_PORT);
+            assertFalse(client.login("tenant1", "secret2"));
+            client.disconnect();
+
+            client.connect("localhost", IN_MEMORY_PORT);
+            assertTrue(client.login(USER, PASSWORD));
+            client.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpConnectionTuning() throws Exception {
+        final EmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .idleTimeout(30)
+                .dataConnection(d -> d.passivePorts(10030, 10031))
+                .connection(c -> {
+                    c.maxLogins(1);
+                    c.anonymousLogin(false);
+                })
+                .build();
+        server.start();
+        try {
+            final FTPClient client = new FTPClient();
+            client.connect("localhost", IN_MEMORY_PORT);
+            assertTrue(client.login(USER, PASSWORD));
+            client.enterLocalPassiveMode();
+            assertTrue(client.storeFile("a.txt", new ByteArrayInputStream("a".getBytes())));
+            assertThat(client.getPassivePort() >= 10030 && client.getPassivePort() <= 10031, is(true));
+
+            final FTPClient second = new FTPClient();
+            second.connect("localhost", IN_MEMORY_PORT);
+            try {
+                second.login(USER, PASSWORD);
+                fail("max logins exceeded.");
+            } catch (FTPConnectionClosedException e) {
+                assertThat(second.getReplyCode(), is(421));
+            }
+            client.disconnect();
+
+            final FTPClient anonymous = new FTPClient();
+            anonymous.connect("localhost", IN_MEMORY_PORT);
+            assertFalse(anonymous.login("anonymous", "guest@example.com"));
+            anonymous.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpEphemeralPorts() throws Exception {
+        final FtpEmbeddedServerBuilder.FtpEmbeddedServer server = ServerBuilder.withFtp()
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .listener("first", l -> l.port(0))
+                .listener("second", l -> l.port(0))
+                .build();
+        server.start();
+        try {
+            final int first = server.boundAddress("first").getPort();
+            final int second = server.boundAddress("second").getPort();
+            assertTrue(first > 0);
+            assertTrue(second > 0);
+            assertNotEquals(first, second);
+            assertThat(server.boundAddress().getPort(), is(first));
+            for (int port : new int[] {first, second}) {
+                final FTPClient client = new FTPClient();
+                client.connect("localhost", port);
+                assertTrue(client.login(USER, PASSWORD));
+                client.disconnect();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpMultipleListeners() throws Exception {
+        final EmbeddedServer server = ServerBuilder.withFtp()
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .listener("plain", l -> l.port(IN_MEMORY_PORT))
+                .listener("limited", l -> {
+                    l.port(LIMITED_PORT);
+                    l.maxConnections(1);
+                })
+                .build();
+        server.start();
+        try {
+            final FTPClient plain = new FTPClient();
+            plain.connect("localhost", IN_MEMORY_PORT);
+            assertTrue(plain.login(USER, PASSWORD));
+            assertTrue(plain.storeFile("shared.txt", new ByteArrayInputStream("shared".getBytes())));
+            plain.disconnect();
+
+            // same users and file system behind the other listener.
+            final FTPClient limited = new FTPClient();
+            limited.connect("localhost", LIMITED_PORT);
+            assertTrue(limited.login(USER, PASSWORD));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            assertTrue(limited.retrieveFile("shared.txt", baos));
+            assertThat(new String(baos.toByteArray()), is("shared"));
+
+            final FTPClient rejected = new FTPClient();
+            try {
+                rejected.connect("localhost", LIMITED_PORT);
+                fail("max connections exceeded.");
+            } catch (IOException e) {
+                // closed on accept.
+            }
+            limited.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpMetrics() throws Exception {
+        final FtpEmbeddedServerBuilder.FtpEmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .metrics(true)
+                .build();
+        server.start();
+        try {
+            final FTPClient client = new FTPClient();
+            client.connect("localhost", IN_MEMORY_PORT);
+            assertFalse(client.login(USER, "wrong"));
+            assertTrue(client.login(USER, PASSWORD));
+            client.setFileType(FTPClient.BINARY_FILE_TYPE);
+            assertTrue(client.storeFile("m.dat", new ByteArrayInputStream(new byte[1000])));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            assertTrue(client.retrieveFile("m.dat", baos));
+            client.listFiles();
+            // commands of a session are ordered, LIST is recorded once NOOP is answered.
+            assertTrue(client.sendNoOp());
+
+            final FtpMetrics.Snapshot snapshot = server.ftpMetrics();
+            assertThat(snapshot.getActiveSessions(), is(1));
+            assertThat(snapshot.getLogins(), is(1L));
+            assertThat(snapshot.getFailedLogins(), is(1L));
+            assertThat(snapshot.getCommand("STOR").getCount(), is(1L));
+            assertThat(snapshot.getCommand("RETR").getCount(), is(1L));
+            assertThat(snapshot.getData().getCount(), is(3L));
+            assertTrue(snapshot.getControl().getCount() > 0);
+            assertThat(snapshot.getTotal().getBytesUploaded(), is(1000L));
+            assertThat(snapshot.getUsers().get(USER).getBytesDownloaded(), is(1000L));
+            client.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpUserLimits() throws Exception {
+        final EmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                }, limits -> {
+                    limits.maxUploadRate(40_000);
+                    limits.maxLogins(1);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .bandwidth(50_000L)
+                .build();
+        server.start();
+        try {
+            final FTPClient client = new FTPClient();
+            client.connect("localhost", IN_MEMORY_PORT);
+            assertTrue(client.login(USER, PASSWORD));
+            client.setFileType(FTPClient.BINARY_FILE_TYPE);
+            long start = System.nanoTime();
+            assertTrue(client.storeFile("limited.dat", new ByteArrayInputStream(new byte[80_000])));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1500L);
+
+            // download is unlimited for the user, but capped by the server bandwidth.
+            start = System.nanoTime();
+            assertTrue(client.retrieveFile("limited.dat", new ByteArrayOutputStream()));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 450L);
+
+            final FTPClient second = new FTPClient();
+            second.connect("localhost", IN_MEMORY_PORT);
+            try {
+                second.login(USER, PASSWORD);
+                fail("max logins of the user exceeded.");
+            } catch (FTPConnectionClosedException e) {
+                assertThat(second.getReplyCode(), is(421));
+            }
+            client.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpPooledClient() throws Exception {
+        final EmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .build();
+        server.start();
+        final Path local = Files.createTempDirectory(Paths.get("/tmp"), "ftpClient");
+        final List<Path> files = new ArrayList<>();
+        try (final FtpClientImpl client = new FtpClientBuilder("localhost", IN_MEMORY_PORT)
+                .username(USER)
+                .password(PASSWORD)
+                .maxConnections(3)
+                .bufferSize(16 * 1024)
+                .build()) {
+            for (int i = 0; i < 10; i++) {
+                files.add(Files.write(local.resolve("f" + i + ".dat"), new byte[1000 + i]));
+            }
+            final TransferSummary put = client.putAll(files, "/");
+            assertTrue(put.isSuccess());
+            assertThat(put.getTransferredBytes(), is(10_045L));
+            assertTrue(client.getConnections() <= 3);
+
+            try (Stream<FTPFile> list = client.list("/")) {
+                assertThat(list.filter(f -> f.getName().endsWith(".dat")).count(), is(10L));
+            }
+            final Path downloads = local.resolve("downloads");
+            final TransferSummary get = client.getAll(
+                    Arrays.asList("/f0.dat", "/f9.dat", "/missing.dat"), downloads);
+            assertThat(get.count(TransferResult.Status.TRANSFERRED), is(2L));
+            assertThat(get.count(TransferResult.Status.FAILED), is(1L));
+            assertThat(Files.size(downloads.resolve("f9.dat")), is(1009L));
+            assertThat(client.getActiveConnections(), is(0));
+        } finally {
+            server.stop();
+            try (Stream<Path> walk = Files.walk(local)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testFtpPooledClientKeepsConnections() throws Exception {
+        final ListeningServer server = ServerBuilder.withFtp().port(0)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .idleTimeout(1)
+                .build();
+        server.start();
+        try (final FtpClientImpl client = new FtpClientBuilder("localhost", server.boundAddress().getPort())
+                .username(USER)
+                .password(PASSWORD)
+                .maxConnections(1)
+                .build()) {
+            client.put("/kept.dat", new ByteArrayInputStream("kept".getBytes()));
+            try {
+                client.get("/missing.dat", new ByteArrayOutputStream());
+                fail("missing file must fail.");
+            } catch (IllegalStateException e) {
+                // a negative reply keeps the connection.
+                assertThat(client.getConnections(), is(1));
+            }
+
+            // the server closes the idle connection, the pool notices it when borrowing.
+            Thread.sleep(2500L);
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            client.get("/kept.dat", baos);
+            assertThat(new String(baos.toByteArray()), is("kept"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpSharedRuntime() throws Exception {
+        final Path local = Files.createTempDirectory(Paths.get("/tmp"), "ftpRuntime");
+        try (final EmbeddedRuntime runtime = new EmbeddedRuntime()) {
+            final List<Path> files = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                files.add(Files.write(local.resolve("r" + i + ".dat"), new byte[1000]));
+            }
+            final List<FtpEmbeddedServerBuilder.FtpEmbeddedServer> servers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                final FtpEmbeddedServerBuilder.FtpEmbeddedServer server = ServerBuilder.withFtp()
+                        .port(0)
+                        .runtime(runtime)
+                        .user(u -> {
+                            u.setName(USER);
+                            u.setPassword(PASSWORD);
+                            u.setHomeDirectory("/" + USER);
+                        })
+                        .inMemoryFilesystem(f -> f.setCreateHome(true))
+                        .build();
+                server.start();
+                servers.add(server);
+            }
+            servers.get(0).stop();
+            // the shared command executor survives the first server.
+            try (final FtpClientImpl client = new FtpClientBuilder("localhost", servers.get(1).boundAddress().getPort())
+                    .username(USER)
+                    .password(PASSWORD)
+                    .maxConnections(3)
+                    .runtime(runtime)
+                    .build()) {
+                assertTrue(client.putAll(files, "/").isSuccess());
+                try (Stream<FTPFile> list = client.list("/")) {
+                    assertThat(list.count(), is(6L));
+                }
+            } finally {
+                servers.get(1).stop();
+            }
+        } finally {
+            try (Stream<Path> walk = Files.walk(local)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testFtpServerMetrics() throws Exception {
+        final ListeningServer server = ServerBuilder.withFtp()
+                .port(0)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .build();
+        server.start();
+        try {
+            final FTPClient client = new FTPClient();
+            client.connect("localhost", server.boundAddress().getPort());
+            assertTrue(client.login(USER, PASSWORD));
+            client.enterLocalPassiveMode();
+            client.setFileType(FTPClient.BINARY_FILE_TYPE);
+            assertTrue(client.storeFile("metrics.dat", new ByteArrayInputStream(new byte[5000])));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(client.retrieveFile("metrics.dat", out));
+            assertFalse(client.retrieveFile("missing.dat", new ByteArrayOutputStream()));
+            assertThat(server.metrics().snapshot().getActiveConnections(), is(1L));
+            client.logout();
+            client.disconnect();
+
+            final long deadline = System.currentTimeMillis() + 10_000L;
+            while (server.metrics().snapshot().getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            final ServerMetrics.Snapshot snapshot = server.metrics().snapshot();
+            assertThat(snapshot.getProtocol(), is("ftp"));
+            assertThat(snapshot.getTotalConnections(), is(1L));
+            assertThat(snapshot.getActiveConnections(), is(0L));
+            assertThat(snapshot.getBytesReceived(), is(5000L));
+            assertThat(snapshot.getBytesSent(), is(5000L));
+            assertTrue(snapshot.getOperations() >= 6L);
+            assertThat(snapshot.getErrors(), is(1L));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFtpDrainStop() throws Exception {
+        final ListeningServer server = ServerBuilder.withFtp()
+                .port(0)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .build();
+        server.start();
+        final int port = server.boundAddress().getPort();
+        final FTPClient client = new FTPClient();
+        client.connect("localhost", port);
+        assertTrue(client.login(USER, PASSWORD));
+        client.enterLocalPassiveMode();
+        final OutputStream upload = client.storeFileStream("drain.dat");
+        upload.write(new byte[1000]);
+        upload.flush();
+
+        final CompletableFuture<Long> stop = CompletableFuture.supplyAsync(() -> server.stop(Duration.ofSeconds(10)));
+        // new connections are closed while draining.
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        boolean rejected = false;
+        while (!rejected && System.currentTimeMillis() < deadline) {
+            final FTPClient other = new FTPClient();
+            try {
+                other.connect("localhost", port);
+                rejected = !other.login(USER, PASSWORD);
+                other.disconnect();
+                Thread.sleep(20L);
+            } catch (IOException e) {
+                rejected = true;
+            }
+        }
+        assertTrue(rejected);
+        assertFalse(stop.isDone());
+
+        // the running transfer completes.
+        upload.write(new byte[1000]);
+        upload.close();
+        assertTrue(client.completePendingCommand());
+        assertThat(stop.get(10, TimeUnit.SECONDS), is(0L));
+        assertFalse(server.isRunning());
+    }
+
+    @Test
+    public void testFtpsSessionCacheAndFastCiphers() throws Exception {
+        final Path keystore = Paths.get(getClass().getResource("/security/ftpserver.jks").toURI());
+        final EmbeddedServer server = ServerBuilder.withFtp().port(IN_MEMORY_PORT)
+                .user(u -> {
+                    u.setName(USER);
+                    u.setPassword(PASSWORD);
+                    u.setHomeDirectory("/" + USER);
+                })
+                .inMemoryFilesystem(f -> f.setCreateHome(true))
+                .ssl(s -> {
+                    s.keystorePath(keystore);
+                    s.keystorePassword("password");
+                    s.keyPassword("password");
+                    s.explicit();
+                    s.sessionCacheSize(1000);
+                    s.sessionTimeout(600);
+                    s.fastCiphers();
+                })
+                .build();
+        server.start();
+        final Path local = Files.createTempDirectory(Paths.get("/tmp"), "ftpsClient");
+        final List<Path> files = new ArrayList<>();
+        try (final FtpClientImpl client = new FtpClientBuilder("localhost", IN_MEMORY_PORT)
+                .username(USER)
+                .password(PASSWORD)
+                .maxConnections(2)
+                .ftps(false)
+                .trustManager(TrustManagerUtils.getAcceptAllTrustManager())
+                .build()) {
+            for (int i = 0; i < 20; i++) {
+                files.add(Files.write(local.resolve("s" + i + ".dat"), new byte[100]));
+            }
+            final TransferSummary put = client.putAll(files, "/");
+            assertTrue(put.isSuccess());
+            assertThat(put.getTransferredBytes(), is(2000L));
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            client.get("/s7.dat", out);
+            assertThat(out.size(), is(100));
+
+            final SSLContext clientContext = SSLContext.getInstance("TLS");
+            clientContext.init(null, new TrustManager[] {TrustManagerUtils.getAcceptAllTrustManager()}, null);
+            final SSLSession first = ftpsSession(clientContext);
+            assertThat(first.getProtocol(), is("TLSv1.2"));
+            final String cipherSuite = first.getCipherSuite();
+            assertTrue(cipherSuite, cipherSuite.contains("_GCM_") || cipherSuite.contains("CHACHA20"));
+            // the second handshake offers the cached session, the server cache resumes it without a full handshake.
+            assertThat(ftpsSession(clientContext).getId(), is(first.getId()));
+        } finally {
+            server.stop();
+            try (Stream<Path> walk = Files.walk(local)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static SSLSession ftpsSession(SSLContext clientContext) throws IOException {
+        final SSLSocket[] control = new SSLSocket[1];
+        final FTPSClient ftps = new FTPSClient(false, clientContext) {
+            @Override
+            protected void _connectAction_() throws IOException {
+                super._connectAction_();
+                control[0] = (SSLSocket) _socket_;
+            }
+        };
+        ftps.connect("localhost", IN_MEMORY_PORT);
+        try {
+            assertTrue(ftps.login(USER, PASSWORD));
+            return control[0].getSession();
+        } finally {
+            ftps.disconnect();
+        }
+    }
+
     private File createTempFile(final Path path) throws IOException {
         final File tempFile = Files.createTempFile(path, "ftpTest01", ".dat").toFile();
         assertTrue(tempFile.exists());
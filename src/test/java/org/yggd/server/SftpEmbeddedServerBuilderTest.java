@@ -15,22 +15,59 @@
  */
 package org.yggd.server;
 
+import com.jcraft.jsch.ChannelSftp;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
+import org.yggd.client.TransferResult;
+import org.yggd.client.TransferSummary;
+import org.yggd.client.sftp.PooledSftpClient;
+import org.yggd.client.sftp.RemoteEntry;
+import org.yggd.client.sftp.SftpClient;
 import org.yggd.client.sftp.SftpClientBuilder;
 import org.yggd.client.sftp.SftpClientImpl;
+import org.yggd.client.sftp.SftpClientMetrics;
+import org.yggd.client.sftp.TransferListener;
+import org.yggd.client.sftp.TransferProgress;
+import org.yggd.metrics.ServerMetrics;
+import org.yggd.runtime.EmbeddedRuntime;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SftpEmbeddedServerBuilderTest {
 
     private static final int PORT = 10022;
+    private static final int LIMITED_PORT = 10023;
     private static final Path TMP_PATH = Paths.get(System.getProperty("java.io.tmpdir"));
     private static Path home;
     private static String USER = "user1";
@@ -74,4 +111,654 @@ public class SftpEmbeddedServerBuilderTest {
             client.put(".gitignore");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSftpSessionBandwidth() {
+        final EmbeddedServer limitedServer = limitedServer()
+                .sessionBandwidth(32 * 1024)
+                .build();
+        limitedServer.start();
+        try (final SftpClientImpl client = limitedClient()) {
+            final long start = System.nanoTime();
+            client.put("throttled.dat", new ByteArrayInputStream(new byte[96 * 1024]));
+            // 32KiB burst, then 64KiB at 32KiB/s.
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1000L);
+        } finally {
+            limitedServer.stop();
+        }
+    }
+
+    @Test
+    public void testSftpMaxSessions() {
+        final EmbeddedServer limitedServer = limitedServer()
+                .maxSessions(1)
+                .build();
+        limitedServer.start();
+        try (final SftpClientImpl client = limitedClient()) {
+            client.ls(".", e -> {});
+            try (final SftpClientImpl rejected = limitedClient()) {
+                rejected.ls(".", e -> {});
+                fail("second session must be rejected.");
+            } catch (IllegalArgumentException e) {
+                // expected.
+            }
+        } finally {
+            limitedServer.stop();
+        }
+    }
+
+    @Test
+    public void testSftpMetrics() {
+        final SftpEmbeddedServerBuilder.SshEmbeddedServer metricsServer = limitedServer()
+                .metrics(true)
+                .build();
+        metricsServer.start();
+        try (final SftpClientImpl client = limitedClient()) {
+            client.put("metrics.dat", new ByteArrayInputStream(new byte[4096]));
+            client.get("metrics.dat", new ByteArrayOutputStream());
+            client.ls(".", e -> {});
+
+            final SftpMetrics.Snapshot snapshot = metricsServer.sftpMetrics();
+            assertThat(snapshot.getActiveSessions(), is(1));
+            assertThat(snapshot.getHandshake().getCount(), is(1L));
+            assertThat(snapshot.getUsers().get(USER).getBytesWritten(), is(4096L));
+            assertThat(snapshot.getUsers().get(USER).getBytesRead(), is(4096L));
+            assertTrue(snapshot.getOperation(SftpMetrics.Operation.OPEN).getCount() >= 2L);
+            assertTrue(snapshot.getOperation(SftpMetrics.Operation.READDIR).getCount() >= 1L);
+        } finally {
+            metricsServer.stop();
+        }
+    }
+
+    @Test
+    public void testSftpSyntheticFiles() throws IOException {
+        Files.write(home.resolve("shadowed.dat"), "real".getBytes());
+        final SyntheticFiles syntheticFiles = new SyntheticFiles()
+                .file("synthetic.dat", 100_000L, SyntheticContent.pattern("abc".getBytes()))
+                .file("shadowed.dat", 50_000L, SyntheticContent.zeros())
+                .discardUploads(true);
+        final EmbeddedServer syntheticServer = limitedServer()
+                .syntheticFiles(syntheticFiles)
+                .build();
+        syntheticServer.start();
+        try (final SftpClientImpl client = limitedClient()) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            client.get("synthetic.dat", baos);
+            final byte[] expected = new byte[100_000];
+            SyntheticContent.pattern("abc".getBytes()).fill(0L, expected, 0, expected.length);
+            assertThat(baos.toByteArray(), is(expected));
+
+            assertThat(client.stat("synthetic.dat").getSize(), is(100_000L));
+            final List<ChannelSftp.LsEntry> listed = client.lsMatch(".", e -> e.getFilename().endsWith(".dat"));
+            assertThat(listed.stream().filter(e -> e.getFilename().equals("synthetic.dat"))
+                    .mapToLong(e -> e.getAttrs().getSize()).boxed().collect(Collectors.toList()),
+                    is(Collections.singletonList(100_000L)));
+            assertThat(listed.stream().filter(e -> e.getFilename().equals("shadowed.dat")).count(), is(1L));
+
+            client.put("discarded.dat", new ByteArrayInputStream(new byte[12345]));
+            assertThat(syntheticFiles.getDiscardedBytes(), is(12345L));
+            assertFalse(home.resolve("discarded.dat").toFile().exists());
+            // nothing is written to disk for synthetic files.
+            assertFalse(home.resolve("synthetic.dat").toFile().exists());
+            assertThat(Files.readAllBytes(home.resolve("shadowed.dat")), is("real".getBytes()));
+        } finally {
+            syntheticServer.stop();
+            Files.deleteIfExists(home.resolve("shadowed.dat"));
+        }
+    }
+
+    @Test
+    public void testSftpSyntheticFilesWithoutDirectory() {
+        final String path = "/synthetic-" + System.nanoTime() + ".dat";
+        final EmbeddedServer syntheticServer = ServerBuilder.withSftp()
+                .port(LIMITED_PORT)
+                .keyPairProvider(new ClassPathResource("/security/hostkey.ser"))
+                .publicKeyAuthenticate(new ClassPathResource("/security/id_rsa.pub"),
+                        (username, clientkey, session, serverkey) ->
+                                USER.equals(username) && serverkey.equals(clientkey))
+                .syntheticFiles(new SyntheticFiles().file(path, 4096L, SyntheticContent.zeros()))
+                .build();
+        syntheticServer.start();
+        try (final SftpClientImpl client = limitedClient()) {
+            assertThat(client.stat(path).getSize(), is(4096L));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            client.get(path, baos);
+            assertThat(baos.toByteArray(), is(new byte[4096]));
+            assertFalse(Paths.get(path).toFile().exists());
+        } finally {
+            syntheticServer.stop();
+        }
+    }
+
+    @Test
+    public void testSftpReadCache() throws IOException {
+        final FileReadCache readCache = new FileReadCache(1024 * 1024);
+        final EmbeddedServer cachingServer = limitedServer()
+                .readCache(readCache)
+                .build();
+        cachingServer.start();
+        Files.write(home.resolve("cached.dat"), "cached".getBytes());
+        try (final SftpClientImpl client = limitedClient()) {
+            for (int i = 0; i < 3; i++) {
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                client.get("cached.dat", baos);
+                assertThat(new String(baos.toByteArray()), is("cached"));
+            }
+            assertThat(readCache.getMisses(), is(1L));
+            assertThat(readCache.getHits(), is(2L));
+
+            client.put("cached.dat", new ByteArrayInputStream("updated".getBytes()));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            client.get("cached.dat", baos);
+            assertThat(new String(baos.toByteArray()), is("updated"));
+        } finally {
+            cachingServer.stop();
+        }
+    }
+
+    @Test
+    public void testReadCacheCoalescesConcurrentMisses() throws Exception {
+        final Path file = home.resolve("coalesced.dat");
+        Files.write(file, new byte[4 * 1024 * 1024]);
+        final FileReadCache readCache = new FileReadCache(8 * 1024 * 1024);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try (SeekableByteChannel channel = readCache.open(file)) {
+                        return channel.size();
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Long> future : futures) {
+                assertThat(future.get(), is(4L * 1024 * 1024));
+            }
+            assertThat(readCache.getMisses(), is(1L));
+            assertThat(readCache.getHits(), is(7L));
+            assertThat(readCache.getCachedBytes(), is(4L * 1024 * 1024));
+
+            // a file that doesn't fit next to the cached one evicts it first.
+            final Path other = home.resolve("coalesced2.dat");
+            Files.write(other, new byte[5 * 1024 * 1024]);
+            try (SeekableByteChannel channel = readCache.open(other)) {
+                assertThat(channel.size(), is(5L * 1024 * 1024));
+            }
+            assertThat(readCache.getEvictions(), is(1L));
+            assertThat(readCache.getCachedBytes(), is(5L * 1024 * 1024));
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(home.resolve("coalesced2.dat"));
+        }
+    }
+
+    @Test
+    public void testSftpPooledClient() throws Exception {
+        try (final PooledSftpClient client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .maxSessions(2)
+                .channelsPerSession(2)
+                .buildPooled()) {
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    final String name = "pooled" + i + ".dat";
+                    futures.add(executor.submit(() -> {
+                        client.put(name, new ByteArrayInputStream(name.getBytes()));
+                        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                        client.get(name, baos);
+                        assertThat(new String(baos.toByteArray()), is(name));
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertTrue(client.getSessions() <= 2);
+            assertThat(client.getActiveChannels(), is(0));
+            assertTrue(client.getIdleChannels() <= 4);
+        }
+    }
+
+    @Test
+    public void testSftpSync() throws Exception {
+        final Path local = Files.createTempDirectory(TMP_PATH, "sftpSync");
+        Files.createDirectories(local.resolve("sub"));
+        Files.write(local.resolve("a.txt"), "a".getBytes());
+        Files.write(local.resolve("sub/b.txt"), "b".getBytes());
+        final Path downloaded = Files.createTempDirectory(TMP_PATH, "sftpGetAll");
+        try (final PooledSftpClient client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .channelsPerSession(2)
+                .buildPooled()) {
+            // more than one missing parent.
+            final TransferSummary first = client.sync(local, "synced/deep/target");
+            assertThat(first.count(TransferResult.Status.TRANSFERRED), is(2L));
+            assertThat(new String(Files.readAllBytes(home.resolve("synced/deep/target/sub/b.txt"))), is("b"));
+
+            final TransferSummary second = client.sync(local, "synced/deep/target");
+            assertThat(second.count(TransferResult.Status.SKIPPED), is(2L));
+
+            final TransferSummary got = client.getAll(
+                    Arrays.asList("synced/deep/target/a.txt", "synced/deep/target/sub/b.txt"), downloaded);
+            assertTrue(got.isSuccess());
+            assertThat(new String(Files.readAllBytes(downloaded.resolve("b.txt"))), is("b"));
+        } finally {
+            deleteRecursively(local);
+            deleteRecursively(downloaded);
+            deleteRecursively(home.resolve("synced"));
+        }
+    }
+
+    @Test
+    public void testSftpGetSegmented() throws Exception {
+        final byte[] content = new byte[1024 * 1024 + 7];
+        new Random(42L).nextBytes(content);
+        Files.write(home.resolve("segmented.dat"), content);
+        final Path local = Files.createTempFile(TMP_PATH, "segmented", ".dat");
+        try (final PooledSftpClient client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .channelsPerSession(4)
+                .buildPooled()) {
+            final TransferResult result = client.getSegmented("segmented.dat", local, 4);
+            assertThat(result.getStatus(), is(TransferResult.Status.TRANSFERRED));
+            assertThat(Files.readAllBytes(local), is(content));
+        } finally {
+            Files.deleteIfExists(local);
+        }
+    }
+
+    @Test
+    public void testSftpResumable() throws Exception {
+        final byte[] content = new byte[200_000];
+        new Random(7L).nextBytes(content);
+        final Path local = Files.createTempFile(TMP_PATH, "resumable", ".dat");
+        Files.write(local, content);
+        final Path downloaded = Files.createTempFile(TMP_PATH, "resumed", ".dat");
+        try (final SftpClientImpl client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .build()) {
+            // interrupted upload.
+            client.put("resumable.dat", new ByteArrayInputStream(Arrays.copyOf(content, 50_000)));
+            final TransferResult put = client.putResumable(local, "resumable.dat", "SHA-256");
+            assertThat(put.getBytes(), is(150_000L));
+            assertFalse(put.isChecksumVerified());
+            assertThat(Files.readAllBytes(home.resolve("resumable.dat")), is(content));
+            assertTrue(Files.exists(home.resolve("resumable.dat.sha256")));
+
+            // corrupted remote prefix is uploaded again, with and without a checksum algorithm.
+            final byte[] corruptedPrefix = Arrays.copyOf(content, 50_000);
+            corruptedPrefix[10] ^= 1;
+            Files.write(home.resolve("resumable.dat"), corruptedPrefix);
+            final TransferResult reuploaded = client.putResumable(local, "resumable.dat", "SHA-256");
+            assertThat(reuploaded.getBytes(), is(200_000L));
+            assertFalse(reuploaded.isChecksumVerified());
+            assertThat(Files.readAllBytes(home.resolve("resumable.dat")), is(content));
+            corruptedPrefix[49_999] ^= 1;
+            Files.write(home.resolve("resumable.dat"), corruptedPrefix);
+            assertThat(client.putResumable(local, "resumable.dat", null).getBytes(), is(200_000L));
+            assertThat(Files.readAllBytes(home.resolve("resumable.dat")), is(content));
+
+            // interrupted download.
+            Files.write(downloaded, Arrays.copyOf(content, 120_000));
+            final TransferResult get = client.getResumable("resumable.dat", downloaded, "SHA-256");
+            assertThat(get.getBytes(), is(80_000L));
+            assertTrue(get.isChecksumVerified());
+            assertThat(get.getChecksum(), is(put.getChecksum()));
+            assertThat(Files.readAllBytes(downloaded), is(content));
+
+            // corrupted partial download is detected and discarded.
+            Files.write(downloaded, new byte[1000]);
+            final TransferResult corrupted = client.getResumable("resumable.dat", downloaded, "SHA-256");
+            assertThat(corrupted.getStatus(), is(TransferResult.Status.FAILED));
+            assertFalse(Files.exists(downloaded));
+        } finally {
+            Files.deleteIfExists(local);
+            Files.deleteIfExists(downloaded);
+        }
+    }
+
+    @Test
+    public void testSftpWalk() throws Exception {
+        final Path root = home.resolve("walk");
+        Files.createDirectories(root.resolve("a"));
+        Files.createDirectories(root.resolve("b/c"));
+        for (int i = 0; i < 50; i++) {
+            Files.write(root.resolve("a/x" + i), new byte[0]);
+        }
+        Files.write(root.resolve("b/c/y"), new byte[0]);
+        try (final PooledSftpClient client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .channelsPerSession(3)
+                .buildPooled()) {
+            try (Stream<RemoteEntry> walk = client.walk("walk")) {
+                assertThat(walk.filter(e -> !e.isDirectory()).count(), is(51L));
+            }
+            try (Stream<ChannelSftp.LsEntry> ls = client.lsStream("walk/a")) {
+                assertThat(ls.limit(3).count(), is(3L));
+            }
+            assertThat(client.lsMatch("walk/b/c", e -> e.getFilename().equals("y")).size(), is(1));
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    @Test
+    public void testSftpGetWhileWalking() throws Exception {
+        // more entries than the listing queue holds, so producers would block while the consumer transfers.
+        final Path root = Files.createDirectories(home.resolve("walkget/d"));
+        for (int i = 0; i < 1100; i++) {
+            Files.write(root.resolve("f" + i), new byte[] {(byte) i});
+        }
+        try (final PooledSftpClient pooled = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .channelsPerSession(2)
+                .buildPooled();
+             final SftpClientImpl single = new SftpClientBuilder("localhost", PORT)
+                     .username(USER)
+                     .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                     .build()) {
+            for (SftpClient client : Arrays.<SftpClient>asList(pooled, single)) {
+                final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                final AtomicInteger walked = new AtomicInteger();
+                try (Stream<RemoteEntry> walk = client.walk("walkget")) {
+                    walk.filter(e -> !e.isDirectory()).forEach(e -> {
+                        if (walked.getAndIncrement() % 50 == 0) {
+                            client.get(e.getPath(), baos);
+                        }
+                    });
+                }
+                assertThat(walked.get(), is(1100));
+                assertThat(baos.size(), is(22));
+            }
+
+            // stopping early releases the listing channel.
+            try (Stream<ChannelSftp.LsEntry> ls = pooled.lsStream("walkget/d")) {
+                assertThat(ls.limit(5).count(), is(5L));
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pooled.getActiveChannels() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertThat(pooled.getActiveChannels(), is(0));
+        } finally {
+            deleteRecursively(home.resolve("walkget"));
+        }
+    }
+
+    @Test
+    public void testSftpListingNeedsSpareChannel() {
+        try (final PooledSftpClient client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .channelsPerSession(1)
+                .buildPooled()) {
+            client.walk(".").close();
+            fail("a single channel pool can't serve the caller while listing.");
+        } catch (IllegalStateException e) {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testSftpGetStreamClosedOnAnotherThread() throws Exception {
+        try (final SftpClientImpl client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .build()) {
+            client.put("handoff.dat", new ByteArrayInputStream("handoff".getBytes()));
+            final InputStream in = client.get("handoff.dat");
+            assertThat(in.read(), is((int) 'h'));
+            CompletableFuture.runAsync(() -> {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).get(10, TimeUnit.SECONDS);
+            // the channel is free again.
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            CompletableFuture.runAsync(() -> client.get("handoff.dat", baos)).get(10, TimeUnit.SECONDS);
+            assertThat(new String(baos.toByteArray()), is("handoff"));
+        } finally {
+            Files.deleteIfExists(home.resolve("handoff.dat"));
+        }
+    }
+
+    @Test
+    public void testSftpTransferListener() {
+        final byte[] content = new byte[300_000];
+        new Random(11L).nextBytes(content);
+        final List<TransferProgress> completed = new ArrayList<>();
+        final TransferListener listener = new TransferListener() {
+            @Override
+            public void completed(TransferProgress progress) {
+                completed.add(progress);
+            }
+        };
+        try (final SftpClientImpl client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .build()) {
+            client.put("progress.dat", new ByteArrayInputStream(content), listener);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            client.get("progress.dat", out, listener);
+            assertThat(out.toByteArray(), is(content));
+
+            assertThat(completed.size(), is(2));
+            assertThat(completed.get(0).getDirection(), is(TransferProgress.Direction.PUT));
+            assertThat(completed.get(0).getBytesTransferred(), is(300_000L));
+            assertThat(completed.get(1).getDirection(), is(TransferProgress.Direction.GET));
+            assertThat(completed.get(1).getTotalBytes(), is(300_000L));
+            assertTrue(completed.get(1).getTimeToFirstByte(TimeUnit.NANOSECONDS) >= 0);
+            assertTrue(completed.get(1).getAverageMBps() > 0);
+
+            final SftpClientMetrics.Snapshot metrics = client.getMetrics().snapshot();
+            assertThat(metrics.getPuts(), is(1L));
+            assertThat(metrics.getGets(), is(1L));
+            assertThat(metrics.getBytesUploaded(), is(300_000L));
+            assertThat(metrics.getBytesDownloaded(), is(300_000L));
+            assertThat(metrics.getGetLatency().getCount(), is(1L));
+        } finally {
+            home.resolve("progress.dat").toFile().delete();
+        }
+    }
+
+    @Test
+    public void testSftpMetadataCache() throws Exception {
+        final Path dir = Files.createDirectories(home.resolve("cached"));
+        Files.write(dir.resolve("a.txt"), new byte[10]);
+        try (final SftpClientImpl client = new SftpClientBuilder("localhost", PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .metadataCache(1, TimeUnit.MINUTES, 100)
+                .build()) {
+            assertThat(client.lsMatch("cached", e -> e.getFilename().endsWith(".txt")).size(), is(1));
+            assertTrue(client.exists("cached/a.txt"));
+            assertFalse(client.exists("cached/b.txt"));
+
+            // changes made by others are not visible until the entries expire.
+            Files.write(dir.resolve("b.txt"), new byte[10]);
+            assertThat(client.lsMatch("cached", e -> e.getFilename().endsWith(".txt")).size(), is(1));
+            assertFalse(client.exists("cached/b.txt"));
+            assertThat(client.getMetadataCache().getHits(), is(2L));
+
+            // own writes invalidate.
+            client.put("cached/c.txt", new ByteArrayInputStream(new byte[5]));
+            assertThat(client.lsMatch("cached", e -> e.getFilename().endsWith(".txt")).size(), is(3));
+            assertThat(client.stat("cached/c.txt").getSize(), is(5L));
+            client.rm("cached/c.txt");
+            assertFalse(client.exists("cached/c.txt"));
+            assertThat(client.lsMatch("./cached/", e -> e.getFilename().endsWith(".txt")).size(), is(2));
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSftpEphemeralPort() {
+        final ListeningServer server = limitedServer().port(0).build();
+        server.start();
+        try {
+            final int port = server.boundAddress().getPort();
+            assertTrue(port > 0);
+            try (final SftpClientImpl client = new SftpClientBuilder("localhost", port)
+                    .username(USER)
+                    .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                    .build()) {
+                client.ls(".", e -> {});
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSftpSharedRuntime() throws Exception {
+        final Path local = Files.createTempDirectory(TMP_PATH, "sftpRuntime");
+        try (final EmbeddedRuntime runtime = new EmbeddedRuntime()) {
+            final List<Path> files = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                files.add(Files.write(local.resolve("r" + i + ".dat"), new byte[10_000]));
+            }
+            // the second server must still work on the shared pools after the first one stopped.
+            for (int round = 0; round < 2; round++) {
+                final ListeningServer server = limitedServer().port(0).runtime(runtime).build();
+                server.start();
+                try (final PooledSftpClient client = new SftpClientBuilder("localhost", server.boundAddress().getPort())
+                        .username(USER)
+                        .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                        .channelsPerSession(3)
+                        .runtime(runtime)
+                        .buildPooled()) {
+                    assertTrue(client.putAll(files, ".").isSuccess());
+                    try (Stream<RemoteEntry> walk = client.walk(".")) {
+                        assertThat(walk.filter(e -> e.getEntry().getFilename().startsWith("r")).count(), is(6L));
+                    }
+                } finally {
+                    server.stop();
+                }
+            }
+        } finally {
+            deleteRecursively(local);
+            for (int i = 0; i < 6; i++) {
+                Files.deleteIfExists(home.resolve("r" + i + ".dat"));
+            }
+        }
+    }
+
+    @Test
+    public void testSftpServerMetrics() throws Exception {
+        final ListeningServer server = limitedServer().port(0).build();
+        server.start();
+        try {
+            try (final SftpClientImpl client = new SftpClientBuilder("localhost", server.boundAddress().getPort())
+                    .username(USER)
+                    .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                    .build()) {
+                client.put("serverMetrics.dat", new ByteArrayInputStream(new byte[10_000]));
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                client.get("serverMetrics.dat", out);
+                assertThat(out.size(), is(10_000));
+                assertThat(server.metrics().snapshot().getActiveConnections(), is(1L));
+            }
+            final long deadline = System.currentTimeMillis() + 10_000L;
+            while (server.metrics().snapshot().getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            final ServerMetrics.Snapshot snapshot = server.metrics().snapshot();
+            assertThat(snapshot.getProtocol(), is("sftp"));
+            assertThat(snapshot.getTotalConnections(), is(1L));
+            assertThat(snapshot.getActiveConnections(), is(0L));
+            assertThat(snapshot.getBytesReceived(), is(10_000L));
+            assertThat(snapshot.getBytesSent(), is(10_000L));
+            assertTrue(snapshot.getOperations() >= 4L);
+            assertThat(snapshot.getLatency().getCount(), is(snapshot.getOperations()));
+        } finally {
+            server.stop();
+            Files.deleteIfExists(home.resolve("serverMetrics.dat"));
+        }
+    }
+
+    @Test
+    public void testSftpDrainStop() throws Exception {
+        final ListeningServer server = limitedServer().port(0).build();
+        server.start();
+        final int port = server.boundAddress().getPort();
+        Files.write(home.resolve("drain.dat"), new byte[100_000]);
+        try (final SftpClientImpl client = new SftpClientBuilder("localhost", port)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .build()) {
+            final InputStream download = client.get("drain.dat");
+            assertThat(download.read(new byte[1000]), is(1000));
+
+            final CompletableFuture<Long> stop = CompletableFuture.supplyAsync(() -> server.stop(Duration.ofSeconds(10)));
+            // new sessions are closed while draining.
+            final long deadline = System.currentTimeMillis() + 10_000L;
+            boolean rejected = false;
+            while (!rejected && System.currentTimeMillis() < deadline) {
+                try (final SftpClientImpl other = new SftpClientBuilder("localhost", port)
+                        .username(USER)
+                        .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                        .build()) {
+                    other.ls(".", e -> {});
+                    Thread.sleep(20L);
+                } catch (RuntimeException e) {
+                    rejected = true;
+                }
+            }
+            assertTrue(rejected);
+            assertFalse(stop.isDone());
+
+            // the open download completes.
+            final ByteArrayOutputStream rest = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            for (int n; (n = download.read(buffer)) != -1; ) {
+                rest.write(buffer, 0, n);
+            }
+            download.close();
+            assertThat(rest.size(), is(99_000));
+            assertThat(stop.get(10, TimeUnit.SECONDS), is(0L));
+            assertFalse(server.isRunning());
+        } finally {
+            Files.deleteIfExists(home.resolve("drain.dat"));
+        }
+    }
+
+    private static SftpEmbeddedServerBuilder limitedServer() {
+        return ServerBuilder.withSftp()
+                .port(LIMITED_PORT)
+                .directory(home)
+                .keyPairProvider(new ClassPathResource("/security/hostkey.ser"))
+                .publicKeyAuthenticate(new ClassPathResource("/security/id_rsa.pub"),
+                        (username, clientkey, session, serverkey) ->
+                                USER.equals(username) && serverkey.equals(clientkey));
+    }
+
+    private static SftpClientImpl limitedClient() {
+        return new SftpClientBuilder("localhost", LIMITED_PORT)
+                .username(USER)
+                .privateKey(new ClassPathResource("security/id_rsa"), "password")
+                .build();
+    }
+}
@@ -21,9 +21,26 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.yggd.client.tcp.TcpClient;
 import org.yggd.client.tcp.TcpClientImpl;
+import org.yggd.metrics.MetricsRegistry;
+import org.yggd.metrics.PrometheusExporter;
+import org.yggd.metrics.ServerMetrics;
+import org.yggd.runtime.EmbeddedRuntime;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -33,6 +50,7 @@ public class TcpEmbeddedServerBuilderTest {
     private static EmbeddedServer tcpServer;
     private static final BlockingQueue<byte[]> serverRead = new ArrayBlockingQueue<>(10);
     private static final int PORT = 12345;
+    private static final int GROUP_PORT = 12346;
 
     @BeforeClass
     public static void setUpClass() {
@@ -66,6 +84,221 @@ public class TcpEmbeddedServerBuilderTest {
         assertThat(new String(exchange), is("response"));
     }
 
+    @Test
+    public void testTcpBindFailure() {
+        final EmbeddedServer conflicting = tcpServer(PORT);
+        try {
+            conflicting.start();
+            fail("port is already bound.");
+        } catch (EmbeddedServerException e) {
+            assertFalse(conflicting.isRunning());
+        }
+    }
+
+    @Test
+    public void testServerGroup() throws Exception {
+        final EmbeddedServerGroup group = EmbeddedServerGroup.of(tcpServer(GROUP_PORT), tcpServer(GROUP_PORT + 1));
+        group.startAsync().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        assertTrue(group.isRunning());
+
+        final byte[] exchange = new TcpClientImpl().connect("localhost", GROUP_PORT + 1).exchange("request".getBytes());
+        assertThat(new String(exchange), is("response"));
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (group.metrics().snapshot().getOperations() < 1L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+        final ServerMetrics.Snapshot snapshot = group.metrics().snapshot();
+        assertThat(snapshot.getProtocol(), is("tcp"));
+        assertThat(snapshot.getTotalConnections(), is(1L));
+        assertThat(snapshot.getBytesReceived(), is(7L));
+        assertThat(snapshot.getOperations(), is(1L));
+        assertThat(snapshot.getLatency().getCount(), is(1L));
+
+        group.stopAsync().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        assertFalse(group.getServers().get(0).isRunning());
+        assertFalse(group.getServers().get(1).isRunning());
+    }
+
+    @Test
+    public void testServerGroupFailFast() throws Exception {
+        final EmbeddedServer other = tcpServer(GROUP_PORT + 2);
+        final EmbeddedServerGroup group = EmbeddedServerGroup.of(other, tcpServer(PORT));
+        try {
+            group.start();
+            fail("second server must fail to bind.");
+        } catch (EmbeddedServerException e) {
+            assertTrue(e.getMessage().contains(String.valueOf(PORT)));
+        }
+        // servers which did start are stopped again.
+        final long deadline = System.currentTimeMillis() + 10_000L;
+        while (other.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+        assertFalse(other.isRunning());
+    }
+
+    @Test
+    public void testTcpEphemeralPort() {
+        final ListeningServer first = tcpServer(0);
+        final ListeningServer second = tcpServer(0);
+        try {
+            first.boundAddress();
+            fail("server is not running.");
+        } catch (IllegalStateException e) {
+            // expected.
+        }
+        EmbeddedServerGroup.of(first, second).start();
+        try {
+            final int port = first.boundAddress().getPort();
+            assertTrue(port > 0);
+            assertNotEquals(port, second.boundAddress().getPort());
+            final byte[] exchange = new TcpClientImpl().connect("localhost", port).exchange("request".getBytes());
+            assertThat(new String(exchange), is("response"));
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
+
+    @Test
+    public void testTcpSharedRuntime() {
+        try (final EmbeddedRuntime runtime = new EmbeddedRuntime(2, 16)) {
+            final ListeningServer first = ServerBuilder.withTcp().port(0).runtime(runtime)
+                    .active(() -> "first".getBytes()).read(b -> {}).build();
+            final ListeningServer second = ServerBuilder.withTcp().port(0).runtime(runtime)
+                    .active(() -> "second".getBytes()).read(b -> {}).build();
+            first.start();
+            second.start();
+            final TcpClient client = new TcpClientImpl(runtime).connect("localhost", second.boundAddress().getPort());
+            first.stop();
+            // stopping one server leaves the shared event loops running, and the client is reusable.
+            for (int i = 0; i < 20; i++) {
+                assertThat(new String(client.exchange("request".getBytes())), is("second"));
+            }
+            second.stop();
+            assertFalse(runtime.isClosed());
+        }
+    }
+
+    @Test
+    public void testTcpMetricsExport() throws Exception {
+        final ListeningServer server = tcpServer(0);
+        server.start();
+        final Path file = Files.createTempFile("metrics", ".prom");
+        try (final MetricsRegistry registry = new MetricsRegistry().register("echo", server.metrics());
+             final PrometheusExporter.HttpEndpoint endpoint =
+                     PrometheusExporter.serve(registry, new InetSocketAddress("localhost", 0))) {
+            new TcpClientImpl().connect("localhost", server.boundAddress().getPort()).exchange("request".getBytes());
+            final long deadline = System.currentTimeMillis() + 10_000L;
+            while (server.metrics().snapshot().getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50L);
+            }
+            final ServerMetrics.Snapshot snapshot = server.metrics().snapshot();
+            assertThat(snapshot.getProtocol(), is("tcp"));
+            assertThat(snapshot.getTotalConnections(), is(1L));
+            assertThat(snapshot.getActiveConnections(), is(0L));
+            assertThat(snapshot.getBytesReceived(), is(7L));
+            assertThat(snapshot.getBytesSent(), is(8L));
+            assertThat(snapshot.getOperations(), is(1L));
+            assertThat(snapshot.getErrors(), is(0L));
+
+            registry.export(PrometheusExporter.file(file));
+            final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            assertTrue(text.contains("# TYPE embedded_server_operations_total counter\n"));
+            assertTrue(text.contains("embedded_server_operations_total{server=\"echo\",protocol=\"tcp\"} 1\n"));
+            assertTrue(text.contains("embedded_server_sent_bytes_total{server=\"echo\",protocol=\"tcp\"} 8\n"));
+
+            final HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + endpoint.getAddress().getPort() + "/metrics").openConnection();
+            assertThat(connection.getResponseCode(), is(200));
+            assertThat(connection.getContentType(), is(PrometheusExporter.CONTENT_TYPE));
+            try (InputStream in = connection.getInputStream()) {
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    body.write(buffer, 0, n);
+                }
+                assertThat(body.toString("UTF-8"), is(text));
+            }
+        } finally {
+            server.stop();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTcpDrainStop() throws Exception {
+        // the read callback finishes within the drain timeout.
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ListeningServer server = blockingServer(entered, release);
+        server.start();
+        try (Socket socket = sendRequest(server)) {
+            assertTrue(socket.isConnected());
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            new Thread(() -> {
+                sleep(200L);
+                release.countDown();
+            }).start();
+            final long start = System.nanoTime();
+            assertThat(server.stop(Duration.ofSeconds(10)), is(0L));
+            // no default quiet period of the event loops.
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000L);
+            assertFalse(server.isRunning());
+        }
+
+        // the read callback is cut off at the timeout.
+        final CountDownLatch stuck = new CountDownLatch(1);
+        final CountDownLatch never = new CountDownLatch(1);
+        final ListeningServer cutOff = blockingServer(stuck, never);
+        cutOff.start();
+        try (Socket socket = sendRequest(cutOff)) {
+            assertTrue(socket.isConnected());
+            assertTrue(stuck.await(10, TimeUnit.SECONDS));
+            assertThat(cutOff.stop(Duration.ofMillis(200)), is(1L));
+        } finally {
+            never.countDown();
+        }
+    }
+
+    private static ListeningServer blockingServer(CountDownLatch entered, CountDownLatch release) {
+        return ServerBuilder.withTcp()
+                .port(0)
+                .active(() -> "response".getBytes())
+                .read(b -> {
+                    entered.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .build();
+    }
+
+    private static Socket sendRequest(ListeningServer server) throws IOException {
+        final Socket socket = new Socket("localhost", server.boundAddress().getPort());
+        socket.getOutputStream().write("request".getBytes());
+        socket.getOutputStream().flush();
+        return socket;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ListeningServer tcpServer(int port) {
+        return ServerBuilder.withTcp()
+                .port(port)
+                .active(() -> "response".getBytes())
+                .read(b -> {})
+                .build();
+    }
+
     @AfterClass
     public static void tearDownClass() {
         if (tcpServer != null && tcpServer.isRunning()) {